@@ -0,0 +1,111 @@
+package dev.roray.bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+
+/**
+ * Writes CSV files in the {@code small.csv} schema ({@code Name,Age,Mobile,External}).
+ * The same seed and size always produce byte-identical files, so numbers from different
+ * machines and commits are comparable.
+ *
+ * <pre>
+ *   java -cp benchmarks.jar dev.roray.bench.CsvGenerator out.csv 4g [seed]
+ * </pre>
+ */
+public final class CsvGenerator {
+
+    static final long DEFAULT_SEED = 42L;
+
+    private static final String[] FIRST_NAMES = {
+            "John", "Jane", "Employee", "Aarav", "Priya", "Rohan", "Mei", "Olga", "Carlos", "Fatima",
+            "Liam", "Noah", "Ava", "Zoe", "Maximilian", "Siddharth", "Anastasia", "Kwame", "Yuki", "Lars" };
+    private static final String[] LAST_NAMES = {
+            "Smith", "Doe", "Ray", "Kumar", "Chen", "Ivanova", "Garcia", "Khan", "Brown", "Nakamura",
+            "Okafor", "Andersson", "Muller", "Rossi", "Fernandes", "Papadopoulos", "Silva", "Kowalski" };
+
+    private CsvGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: CsvGenerator <out.csv> <size, e.g. 512m / 4g> [seed]");
+            return;
+        }
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+        long start = System.nanoTime();
+        long rows = generate(Path.of(args[0]), parseSize(args[1]), seed);
+        System.out.printf("Wrote %d rows to %s in %.2f s%n", rows, args[0], (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Writes whole rows until the file reaches at least {@code targetBytes}; returns the row count.
+     */
+    static long generate(Path out, long targetBytes, long seed) throws IOException {
+        SplittableRandom random = new SplittableRandom(seed);
+        ByteBuffer buf = ByteBuffer.allocateDirect(4 * 1024 * 1024);
+        long written = 0;
+        long rows = 0;
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            buf.put("Name,Age,Mobile,External\n".getBytes(StandardCharsets.US_ASCII));
+            while (written + buf.position() < targetBytes) {
+                if (buf.remaining() < 128) {
+                    written += flush(ch, buf);
+                }
+                putAscii(buf, FIRST_NAMES[random.nextInt(FIRST_NAMES.length)]);
+                buf.put((byte) ' ');
+                putAscii(buf, LAST_NAMES[random.nextInt(LAST_NAMES.length)]);
+                buf.put((byte) ',');
+                putDigits(buf, 18 + random.nextInt(62), 2);
+                buf.put((byte) ',');
+                putDigits(buf, 9_000_000_000L + random.nextLong(1_000_000_000L), 10);
+                buf.put((byte) ',');
+                buf.put((byte) (random.nextInt(4) == 0 ? '1' : '0'));
+                buf.put((byte) '\n');
+                rows++;
+            }
+            written += flush(ch, buf);
+        }
+        return rows;
+    }
+
+    static long parseSize(String size) {
+        String s = size.trim().toLowerCase();
+        long unit = switch (s.charAt(s.length() - 1)) {
+            case 'k' -> 1024L;
+            case 'm' -> 1024L * 1024;
+            case 'g' -> 1024L * 1024 * 1024;
+            default -> 1L;
+        };
+        return Long.parseLong(unit == 1L ? s : s.substring(0, s.length() - 1)) * unit;
+    }
+
+    private static void putAscii(ByteBuffer buf, String s) {
+        for (int i = 0; i < s.length(); i++) {
+            buf.put((byte) s.charAt(i));
+        }
+    }
+
+    private static void putDigits(ByteBuffer buf, long value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            buf.put(buf.position() + i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buf.position(buf.position() + width);
+    }
+
+    private static long flush(FileChannel ch, ByteBuffer buf) throws IOException {
+        buf.flip();
+        long n = 0;
+        while (buf.hasRemaining()) {
+            n += ch.write(buf);
+        }
+        buf.clear();
+        return n;
+    }
+}
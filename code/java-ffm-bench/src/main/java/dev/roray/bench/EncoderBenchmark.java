@@ -0,0 +1,87 @@
+package dev.roray.bench;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The two passes of {@code runSource}: the size scan and the binary encode, over a mapped
+ * CSV of each size. Report is time per file; divide the size by it for MB/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class EncoderBenchmark {
+
+    private static final MethodHandle SKIP_HEADER = Samples.staticMethod("CsvBinaryEncoder", "skipHeader",
+            MethodType.methodType(long.class, MemorySegment.class));
+    private static final MethodHandle ENCODED_SIZE = Samples.staticMethod("CsvBinaryEncoder", "encodedSize",
+            MethodType.methodType(long.class, MemorySegment.class, long.class, long.class));
+    private static final MethodHandle ENCODE = Samples.staticMethod("CsvBinaryEncoder", "encode",
+            MethodType.methodType(long.class, MemorySegment.class, long.class, long.class, MemorySegment.class,
+                    long.class));
+
+    @Param({ "16m", "256m", "2g" })
+    public String fileSize;
+
+    private Arena arena;
+    private MemorySegment csv;
+    private MemorySegment out;
+    private long recordsStart;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        arena = Arena.ofShared();
+        try (FileChannel ch = FileChannel.open(Samples.csvOfSize(CsvGenerator.parseSize(fileSize)),
+                StandardOpenOption.READ)) {
+            csv = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena);
+        }
+        csv.load(); // measure encoding, not page faults on first touch
+        recordsStart = (long) SKIP_HEADER.invokeExact(csv);
+        long outSize = (long) ENCODED_SIZE.invokeExact(csv, recordsStart, csv.byteSize());
+        out = arena.allocate(outSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        arena.close();
+    }
+
+    @Benchmark
+    public long scan() throws Throwable {
+        return (long) ENCODED_SIZE.invokeExact(csv, recordsStart, csv.byteSize());
+    }
+
+    @Benchmark
+    public long encode() throws Throwable {
+        return (long) ENCODE.invokeExact(csv, recordsStart, csv.byteSize(), out, 0L);
+    }
+
+    @Benchmark
+    public long scanAndEncode() throws Throwable {
+        long size = (long) ENCODED_SIZE.invokeExact(csv, recordsStart, csv.byteSize());
+        return size + (long) ENCODE.invokeExact(csv, recordsStart, csv.byteSize(), out, 0L);
+    }
+}
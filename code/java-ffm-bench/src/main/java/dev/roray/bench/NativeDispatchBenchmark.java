@@ -0,0 +1,68 @@
+package dev.roray.bench;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of reaching the same native function through the {@code NativeLinker} dynamic
+ * proxy versus a plain {@code invokeExact} downcall. The target is
+ * {@code io_uring_close(-1)}, which returns immediately, so the numbers are dispatch only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class NativeDispatchBenchmark {
+
+    private static final String LIBRARY = Samples.library("libiouring_tcp.so");
+
+    private static final MethodHandle DIRECT_CLOSE;
+    private static final MethodHandle PROXY_CLOSE;
+
+    static {
+        SymbolLookup lib = SymbolLookup.libraryLookup(LIBRARY, Arena.global());
+        DIRECT_CLOSE = Linker.nativeLinker().downcallHandle(lib.find("io_uring_close").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+
+        try {
+            Class<?> operations = Samples.type("IoUringOperations");
+            MethodHandle link = Samples.staticMethod("NativeLinker", "link",
+                    MethodType.methodType(Object.class, Class.class, String.class, Arena.class));
+            Object proxy = link.invoke(operations, LIBRARY, Arena.global());
+            PROXY_CLOSE = MethodHandles.publicLookup()
+                    .findVirtual(operations, "close", MethodType.methodType(void.class, int.class))
+                    .bindTo(proxy);
+        } catch (Throwable t) {
+            throw new ExceptionInInitializerError(t);
+        }
+    }
+
+    @Benchmark
+    public void directInvokeExact() throws Throwable {
+        DIRECT_CLOSE.invokeExact(-1);
+    }
+
+    @Benchmark
+    public void proxyDispatch() throws Throwable {
+        PROXY_CLOSE.invokeExact(-1);
+    }
+}
@@ -0,0 +1,74 @@
+package dev.roray.bench;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Digit parsing straight from a memory segment: the boxed {@code FfmDemoProducer}
+ * helpers against the primitive one in {@code CsvBinaryEncoder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    private static final MethodHandle PRODUCER_PARSE_LONG = Samples.staticMethod("FfmDemoProducer", "parseLong",
+            MethodType.methodType(Long.class, MemorySegment.class, long.class, long.class));
+    private static final MethodHandle PRODUCER_PARSE_SHORT = Samples.staticMethod("FfmDemoProducer", "parseShort",
+            MethodType.methodType(Short.class, MemorySegment.class, long.class, long.class));
+    private static final MethodHandle ENCODER_PARSE_LONG = Samples.staticMethod("CsvBinaryEncoder", "parseLong",
+            MethodType.methodType(long.class, MemorySegment.class, long.class, long.class));
+
+    private Arena arena;
+    private MemorySegment digits; // "9876543210,42"
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        arena = Arena.ofConfined();
+        digits = arena.allocateFrom("9876543210,42");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        arena.close();
+    }
+
+    @Benchmark
+    public Long producerParseLong() throws Throwable {
+        return (Long) PRODUCER_PARSE_LONG.invokeExact(digits, 0L, 10L);
+    }
+
+    @Benchmark
+    public Short producerParseShort() throws Throwable {
+        return (Short) PRODUCER_PARSE_SHORT.invokeExact(digits, 11L, 13L);
+    }
+
+    @Benchmark
+    public long encoderParseLong() throws Throwable {
+        return (long) ENCODER_PARSE_LONG.invokeExact(digits, 0L, 10L);
+    }
+
+    @Benchmark
+    public long encoderParseShortField() throws Throwable {
+        return (long) ENCODER_PARSE_LONG.invokeExact(digits, 11L, 13L);
+    }
+}
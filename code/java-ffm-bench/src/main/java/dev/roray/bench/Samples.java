@@ -0,0 +1,63 @@
+package dev.roray.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Access to the sample code under benchmark.
+ *
+ * The samples live in the unnamed package, which named packages cannot import, so
+ * benchmarks resolve them once into method handles. Kept in {@code static final}
+ * fields these are constants to the JIT and add no call overhead.
+ */
+final class Samples {
+
+    private Samples() {
+    }
+
+    static Class<?> type(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Sample class not compiled in: " + className, e);
+        }
+    }
+
+    static MethodHandle staticMethod(String className, String name, MethodType type) {
+        try {
+            Class<?> owner = type(className);
+            return MethodHandles.privateLookupIn(owner, MethodHandles.lookup()).findStatic(owner, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(className + "." + name + type, e);
+        }
+    }
+
+    /**
+     * Native library from {@code -Dbench.lib.dir} (default: working directory).
+     */
+    static String library(String fileName) {
+        return Path.of(System.getProperty("bench.lib.dir", "."), fileName).toString();
+    }
+
+    /**
+     * Deterministic CSV of roughly {@code bytes} bytes under {@code -Dbench.dir}, generated
+     * on first use and reused by later runs.
+     */
+    static Path csvOfSize(long bytes) {
+        Path file = Path.of(System.getProperty("bench.dir", System.getProperty("java.io.tmpdir")),
+                "bench-" + bytes + ".csv");
+        try {
+            if (!Files.exists(file)) {
+                CsvGenerator.generate(file, bytes, CsvGenerator.DEFAULT_SEED);
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package dev.roray.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One payload pushed over loopback through each transport the samples use. The receiver
+ * is a blocking {@link ServerSocket} sink like {@code runSink} that drains and discards.
+ * Multiply ops/s by the payload size for bytes/s.
+ *
+ * {@code send_buffer_io_uring} connects and sets up a ring per call, exactly as
+ * {@code runSource} uses it; the other paths reuse one connection.
+ */
+@State(Scope.Thread)
+@Threads(1)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-native-access=ALL-UNNAMED")
+public class SendPathBenchmark {
+
+    private static final String IP = "127.0.0.1";
+
+    @Param({ "64k", "8m" })
+    public String payloadSize;
+
+    private ServerSocket sink;
+    private Arena arena;
+    private byte[] heapPayload;
+    private MemorySegment payload;
+
+    private Socket blockingSocket;
+    private OutputStream blockingOut;
+    private SocketChannel nioChannel;
+    private ByteBuffer nioPayload;
+    private int ioUringFd;
+    private MemorySegment ipStr;
+
+    private MethodHandle sendAll;
+    private MethodHandle sendBuffer;
+    private MethodHandle close;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        sink = new ServerSocket(0);
+        Thread.ofPlatform().daemon().start(this::acceptLoop);
+        int port = sink.getLocalPort();
+
+        int size = (int) CsvGenerator.parseSize(payloadSize);
+        heapPayload = new byte[size];
+        new SplittableRandom(CsvGenerator.DEFAULT_SEED).nextBytes(heapPayload);
+        arena = Arena.ofShared();
+        payload = arena.allocate(size);
+        payload.copyFrom(MemorySegment.ofArray(heapPayload));
+        nioPayload = payload.asByteBuffer();
+        ipStr = arena.allocateFrom(IP);
+
+        blockingSocket = new Socket(IP, port);
+        blockingOut = blockingSocket.getOutputStream();
+        nioChannel = SocketChannel.open(new InetSocketAddress(IP, port));
+
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup tcpLib = SymbolLookup.libraryLookup(Samples.library("libiouring_tcp.so"), arena);
+        MethodHandle globalInit = linker.downcallHandle(tcpLib.find("io_uring_global_init").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        MethodHandle connect = linker.downcallHandle(tcpLib.find("io_uring_connect").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        sendAll = linker.downcallHandle(tcpLib.find("io_uring_send_all").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG));
+        close = linker.downcallHandle(tcpLib.find("io_uring_close").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+
+        SymbolLookup senderLib = SymbolLookup.libraryLookup(Samples.library("io_uring_tcp_sender.so"), arena);
+        sendBuffer = linker.downcallHandle(senderLib.find("send_buffer_io_uring").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                        ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+
+        int ret = (int) globalInit.invokeExact(32);
+        if (ret < 0) {
+            throw new IllegalStateException("io_uring_global_init failed: " + ret);
+        }
+        ioUringFd = (int) connect.invokeExact(ipStr, port);
+        if (ioUringFd < 0) {
+            throw new IllegalStateException("io_uring_connect failed: " + ioUringFd);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Throwable {
+        close.invokeExact(ioUringFd);
+        nioChannel.close();
+        blockingSocket.close();
+        sink.close();
+        arena.close();
+    }
+
+    @Benchmark
+    public void blockingSocket() throws IOException {
+        blockingOut.write(heapPayload);
+    }
+
+    @Benchmark
+    public long nioChannel() throws IOException {
+        nioPayload.clear();
+        long sent = 0;
+        while (nioPayload.hasRemaining()) {
+            sent += nioChannel.write(nioPayload);
+        }
+        return sent;
+    }
+
+    @Benchmark
+    public int ioUringSendAll() throws Throwable {
+        return (int) sendAll.invokeExact(ioUringFd, payload, payload.byteSize());
+    }
+
+    @Benchmark
+    public int ioUringSendBuffer() throws Throwable {
+        return (int) sendBuffer.invokeExact(ipStr, sink.getLocalPort(), payload, payload.byteSize());
+    }
+
+    private void acceptLoop() {
+        while (!sink.isClosed()) {
+            try {
+                Socket client = sink.accept();
+                Thread.ofVirtual().start(() -> drain(client));
+            } catch (IOException e) {
+                return; // sink closed at tear down
+            }
+        }
+    }
+
+    private static void drain(Socket client) {
+        byte[] buffer = new byte[256 * 1024];
+        try (client; InputStream in = client.getInputStream()) {
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+        } catch (IOException ignored) {
+            // connection reset at tear down
+        }
+    }
+}
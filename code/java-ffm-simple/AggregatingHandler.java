@@ -0,0 +1,53 @@
+import java.lang.foreign.MemorySegment;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps running aggregates over the whole stream, across connections: drops records
+ * whose {@code mobile} was seen before and counts the rest by age bucket and external
+ * flag. Both tables are off-heap ({@link LongHashSet}, {@link LongCountMap}) and fed
+ * straight from the batch with {@link RecordDecoder}, so hundreds of millions of
+ * distinct mobiles cost 8 to 16 bytes each and nothing for the GC to trace.
+ *
+ * The tables are not thread-safe; each batch is folded in under one lock, which I/O
+ * threads take once per read rather than once per record. Size the dedup table with
+ * {@code -Dffm.dedup.expected} to avoid rehashing it while data flows.
+ */
+final class AggregatingHandler implements BatchHandler {
+
+    static final int AGE_BUCKET = 10;
+
+    private final LongHashSet mobiles = new LongHashSet("dedup-mobiles",
+            Long.getLong("ffm.dedup.expected", 1 << 20));
+    private final LongCountMap groups = new LongCountMap("aggregate-groups", 64); // key: age bucket << 1 | external
+    private long records;
+    private long duplicates;
+
+    @Override
+    public boolean onBatch(RecordBatch batch) {
+        MemorySegment segment = batch.segment();
+        synchronized (this) {
+            for (long offset = 0; offset < segment.byteSize(); offset = RecordDecoder.next(segment, offset)) {
+                if (!mobiles.add(RecordDecoder.mobile(segment, offset))) {
+                    duplicates++;
+                    continue;
+                }
+                long bucket = RecordDecoder.age(segment, offset) / AGE_BUCKET;
+                groups.add(bucket << 1 | (RecordDecoder.external(segment, offset) ? 1 : 0), 1);
+            }
+            records += batch.records();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized void onDisconnect(Connection connection) {
+        System.out.println("Connection " + connection.id() + " closed, " + records + " records so far, "
+                + mobiles.size() + " distinct mobiles, " + duplicates + " duplicates dropped ("
+                + mobiles.byteSize() / (1024 * 1024) + " MB dedup table)");
+        Map<Long, long[]> byBucket = new TreeMap<>(); // bucket -> internal, external
+        groups.forEach((key, count) -> byBucket.computeIfAbsent(key >> 1, b -> new long[2])[(int) (key & 1)] += count);
+        byBucket.forEach((bucket, counts) -> System.out.printf("  age %3d-%-3d  internal %,12d  external %,12d%n",
+                bucket * AGE_BUCKET, bucket * AGE_BUCKET + AGE_BUCKET - 1, counts[0], counts[1]));
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * Processing stage behind a receiver, independent of the transport: the
+ * {@link ReceiverEngine} drives the same handler over io_uring
+ * ({@link IoUringTransport}) or NIO ({@link NioTransport}), so the two can be
+ * compared like for like and stages such as decode, filter or persist are written
+ * once.
+ *
+ * With {@link RecordDecoder#FRAMING} a batch holds only complete records in the
+ * {@link CsvBinaryEncoder#RECORD_LAYOUT} format; {@link RecordFramer} keeps records
+ * split across reads until their rest has arrived. With {@link RecordFramer#RAW} it
+ * holds the bytes of one read as they came. The engine calls a handler from all of its I/O threads at once, one
+ * connection per thread at a time, so handlers must be thread-safe.
+ */
+interface BatchHandler {
+
+    record Connection(long id, String transport, String remote) {
+    }
+
+    default void onConnect(Connection connection) {
+    }
+
+    /**
+     * Processes {@code batch}. Returns {@code true} when done with it, so its buffer is
+     * reused for the connection's next read, or {@code false} to keep the buffer until
+     * {@link RecordBatch#release()}; the connection then continues in a fresh buffer.
+     */
+    boolean onBatch(RecordBatch batch);
+
+    default void onDisconnect(Connection connection) {
+    }
+
+    /**
+     * Handler for a command line name: {@code print}, {@code count} or {@code aggregate}.
+     */
+    static BatchHandler named(String name) {
+        return switch (name) {
+            case "print" -> new PrintHandler();
+            case "count" -> new CountingHandler();
+            case "aggregate" -> new AggregatingHandler();
+            default -> throw new IllegalArgumentException("Unknown handler " + name + ", expected print, count or aggregate");
+        };
+    }
+}
@@ -0,0 +1,36 @@
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reads every field of every record and only counts, so transports can be compared on
+ * throughput with realistic memory traffic but without a slow consumer behind them.
+ */
+final class CountingHandler implements BatchHandler {
+
+    private final LongAdder records = new LongAdder();
+    private final LongAdder externals = new LongAdder();
+    private final LongAdder checksum = new LongAdder(); // keeps the field reads from being optimised away
+
+    @Override
+    public boolean onBatch(RecordBatch batch) {
+        MemorySegment segment = batch.segment();
+        long sum = 0;
+        int external = 0;
+        for (long offset = 0; offset < segment.byteSize(); offset = RecordDecoder.next(segment, offset)) {
+            sum += RecordDecoder.mobile(segment, offset) + RecordDecoder.age(segment, offset);
+            if (RecordDecoder.external(segment, offset)) {
+                external++;
+            }
+        }
+        records.add(batch.records());
+        externals.add(external);
+        checksum.add(sum);
+        return true;
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        System.out.println("Connection " + connection.id() + " closed, " + records.sum() + " records so far, "
+                + externals.sum() + " external");
+    }
+}
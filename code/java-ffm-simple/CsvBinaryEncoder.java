@@ -0,0 +1,198 @@
+import java.lang.foreign.GroupLayout;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Encodes rows of {@code Name,Age,Mobile,External} CSV into the binary record format
+ * sent by the producer: a fixed {@link #RECORD_LAYOUT} header followed by the name bytes.
+ *
+ * All methods work on a byte range of complete lines, so callers can encode a whole
+ * mapped file or just the rows appended since the last call.
+ */
+final class CsvBinaryEncoder {
+
+    private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+    private static final ValueLayout LONG_UA_LE_LAYOUT = ValueLayout.JAVA_LONG_UNALIGNED
+            .withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout SHORT_UA_LE_LAYOUT = ValueLayout.JAVA_SHORT_UNALIGNED
+            .withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final GroupLayout RECORD_LAYOUT = MemoryLayout.structLayout(
+            LONG_UA_LE_LAYOUT.withName("mobile"),
+            SHORT_UA_LE_LAYOUT.withName("age"),
+            SHORT_UA_LE_LAYOUT.withName("name_length"),
+            ValueLayout.JAVA_BOOLEAN.withName("external")).withName("record");
+
+    private static final VarHandle VH_MOBILE = RECORD_LAYOUT.varHandle(PathElement.groupElement("mobile"));
+    private static final VarHandle VH_AGE = RECORD_LAYOUT.varHandle(PathElement.groupElement("age"));
+    private static final VarHandle VH_NAME_LENGTH = RECORD_LAYOUT.varHandle(PathElement.groupElement("name_length"));
+    private static final VarHandle VH_EXTERNAL = RECORD_LAYOUT.varHandle(PathElement.groupElement("external"));
+
+    private static final byte NEW_LINE = 10;
+    private static final byte CARRIAGE_RETURN = 13;
+    private static final byte COMMA = 44;
+
+    private CsvBinaryEncoder() {
+    }
+
+    /**
+     * Offset of the first data row, i.e. one past the header line's new line; -1 when the
+     * header is not complete yet.
+     */
+    static long skipHeader(MemorySegment csv) {
+        long nl = indexOf(csv, NEW_LINE, 0, csv.byteSize());
+        return nl < 0 ? -1 : nl + 1;
+    }
+
+    /**
+     * End of the last complete line in {@code [from, to)}, i.e. one past its new line;
+     * {@code from} when there is none.
+     */
+    static long endOfCompleteLines(MemorySegment csv, long from, long to) {
+        for (long i = to - 1; i >= from; i--) {
+            if (csv.get(BYTE, i) == NEW_LINE) {
+                return i + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Pass 1: binary size of the complete lines in {@code [from, to)}.
+     */
+    static long encodedSize(MemorySegment csv, long from, long to) {
+        long size = 0;
+        long lineStart = from;
+        while (lineStart < to) {
+            long nl = indexOf(csv, NEW_LINE, lineStart, to);
+            long lineEnd = trimCarriageReturn(csv, lineStart, nl < 0 ? to : nl);
+            if (lineEnd > lineStart) {
+                size += RECORD_LAYOUT.byteSize() + fieldEnd(csv, lineStart, lineEnd) - lineStart;
+            }
+            lineStart = nl < 0 ? to : nl + 1;
+        }
+        return size;
+    }
+
+    /**
+     * Pass 2: writes the complete lines in {@code [from, to)} to {@code out} starting at
+     * {@code outOffset}, which must have {@link #encodedSize} bytes free. Returns the
+     * number of records written.
+     */
+    static long encode(MemorySegment csv, long from, long to, MemorySegment out, long outOffset) {
+        IoEvents.EncodeBatch event = new IoEvents.EncodeBatch();
+        event.begin();
+        long start = System.nanoTime();
+        long outStart = outOffset;
+        long records = 0;
+        long lineStart = from;
+        while (lineStart < to) {
+            long nl = indexOf(csv, NEW_LINE, lineStart, to);
+            long lineEnd = trimCarriageReturn(csv, lineStart, nl < 0 ? to : nl);
+            if (lineEnd > lineStart) {
+                outOffset = encodeLine(csv, lineStart, lineEnd, out, outOffset);
+                records++;
+            }
+            lineStart = nl < 0 ? to : nl + 1;
+        }
+
+        IoMetrics.INSTANCE.recordsEncoded.add(records);
+        IoMetrics.INSTANCE.encodeNanos.add(System.nanoTime() - start);
+        event.end();
+        if (event.shouldCommit()) {
+            event.records = records;
+            event.inputBytes = to - from;
+            event.outputBytes = outOffset - outStart;
+            event.commit();
+        }
+        return records;
+    }
+
+    /**
+     * Gather variant of {@link #encode}: writes only the record headers, into
+     * {@code batch}, and describes each record as two iovecs, its header and the name
+     * bytes where they already are in {@code csv}. Stops when the batch is full and
+     * returns where the next call should continue.
+     */
+    static long encodeGather(MemorySegment csv, long from, long to, GatherBatch batch) {
+        long lineStart = from;
+        while (lineStart < to && !batch.isFull()) {
+            long nl = indexOf(csv, NEW_LINE, lineStart, to);
+            long lineEnd = trimCarriageReturn(csv, lineStart, nl < 0 ? to : nl);
+            if (lineEnd > lineStart) {
+                long header = batch.nextHeader();
+                short nameLength = writeHeader(csv, lineStart, lineEnd, batch.headers(), header);
+                batch.add(batch.headers(), header, RECORD_LAYOUT.byteSize());
+                batch.add(csv, lineStart, nameLength);
+            }
+            lineStart = nl < 0 ? to : nl + 1;
+        }
+        return lineStart;
+    }
+
+    // Name,Age,Mobile,External -> header + name, returns the next free out offset
+    private static long encodeLine(MemorySegment csv, long start, long end, MemorySegment out, long outOffset) {
+        short nameLength = writeHeader(csv, start, end, out, outOffset);
+        long nameOffset = outOffset + RECORD_LAYOUT.byteSize();
+        MemorySegment.copy(csv, start, out, nameOffset, nameLength);
+        return nameOffset + nameLength;
+    }
+
+    // Writes the fixed header of one line; the name is the line's first field
+    private static short writeHeader(MemorySegment csv, long start, long end, MemorySegment out, long outOffset) {
+        long nameEnd = fieldEnd(csv, start, end);
+        long ageEnd = fieldEnd(csv, nameEnd + 1, end);
+        long mobileEnd = fieldEnd(csv, ageEnd + 1, end);
+        long externalEnd = fieldEnd(csv, mobileEnd + 1, end);
+        short nameLength = (short) (nameEnd - start);
+
+        VH_MOBILE.set(out, outOffset, parseLong(csv, ageEnd + 1, mobileEnd));
+        VH_AGE.set(out, outOffset, (short) parseLong(csv, nameEnd + 1, ageEnd));
+        VH_NAME_LENGTH.set(out, outOffset, nameLength);
+        VH_EXTERNAL.set(out, outOffset, parseBoolean(csv, mobileEnd + 1, externalEnd));
+        return nameLength;
+    }
+
+    static long parseLong(MemorySegment seg, long start, long end) {
+        long value = 0L;
+        for (long i = start; i < end; i++) {
+            value = value * 10 + (seg.get(BYTE, i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * CSV flag as both encoders read it: true when the field starts with {@code 1},
+     * {@code t} or {@code y} in either case, so {@code 1}, {@code true} and {@code yes}
+     * all work; anything else, including an empty or missing field, is false.
+     */
+    static boolean parseBoolean(MemorySegment seg, long start, long end) {
+        if (start >= end) {
+            return false;
+        }
+        byte b = seg.get(BYTE, start);
+        return b == '1' || b == 't' || b == 'T' || b == 'y' || b == 'Y';
+    }
+
+    private static long trimCarriageReturn(MemorySegment csv, long start, long end) {
+        return end > start && csv.get(BYTE, end - 1) == CARRIAGE_RETURN ? end - 1 : end;
+    }
+
+    private static long fieldEnd(MemorySegment csv, long start, long end) {
+        long comma = start < end ? indexOf(csv, COMMA, start, end) : -1;
+        return comma < 0 ? end : comma;
+    }
+
+    private static long indexOf(MemorySegment seg, byte b, long from, long to) {
+        for (long i = from; i < to; i++) {
+            if (seg.get(BYTE, i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,156 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a CSV file that is appended to continuously and streams only the new rows.
+ *
+ * The follower remembers the last fully processed byte offset. Whenever the file grows
+ * it maps just the new tail, encodes the complete lines in it and sends them as one
+ * incremental batch over a single long-lived connection. A trailing partial line is
+ * left for the next round. Growth is noticed through the directory watch service
+ * (inotify on Linux), with a timed poll as fallback.
+ */
+final class CsvTailFollower {
+
+    private static final long MAX_BATCH_INPUT = 64L * 1024 * 1024; // CSV bytes encoded per round at most
+
+    private final Path csvPath;
+    private final long pollMillis;
+    private long processedOffset = -1; // -1 until the header line is complete
+
+    private TrackedArena outArena;
+    private MemorySegment outBuffer;
+
+    CsvTailFollower(Path csvPath, long pollMillis) {
+        this.csvPath = csvPath;
+        this.pollMillis = pollMillis;
+    }
+
+    void run(String ip, int port) throws Throwable {
+        try (Arena arena = Arena.ofShared();
+                WatchService watcher = FileSystems.getDefault().newWatchService()) {
+
+            SymbolLookup lib = SymbolLookup.libraryLookup("./libiouring_tcp.so", arena);
+            Linker linker = Linker.nativeLinker();
+            IoMetrics metrics = IoMetrics.register(lib, arena);
+
+            MethodHandle globalInit = linker.downcallHandle(lib.find("io_uring_global_init").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+            MethodHandle connect = linker.downcallHandle(lib.find("io_uring_connect").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+            MethodHandle sendAll = linker.downcallHandle(lib.find("io_uring_send_all").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                            ValueLayout.JAVA_LONG));
+
+            ThreadPlacement.pinFromProperty(ThreadPlacement.RING_CPUS, 0);
+            int ret = (int) globalInit.invokeExact(32);
+            if (ret < 0) {
+                throw new IllegalStateException("io_uring_global_init failed: " + ret);
+            }
+            int sockFd = (int) connect.invokeExact(arena.allocateFrom(ip), port);
+            if (sockFd < 0) {
+                throw new IllegalStateException("io_uring_connect failed, fd=" + sockFd);
+            }
+            System.out.println("Following " + csvPath + " -> " + ip + ":" + port);
+
+            Path dir = csvPath.toAbsolutePath().getParent();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+
+            while (true) {
+                MemorySegment batch = nextBatch();
+                if (batch != null) {
+                    int sent = (int) sendAll.invokeExact(sockFd, batch, batch.byteSize());
+                    if (sent < 0) {
+                        throw new IllegalStateException("io_uring_send_all failed: " + sent);
+                    }
+                    metrics.bytesSent.add(sent);
+                    continue; // more may have been appended meanwhile
+                }
+                WatchKey key = watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } finally {
+            if (outArena != null) {
+                outArena.close();
+            }
+        }
+    }
+
+    /**
+     * Encodes the complete lines appended since the last call; null when there are none.
+     */
+    MemorySegment nextBatch() throws IOException {
+        try (FileChannel ch = FileChannel.open(csvPath, StandardOpenOption.READ);
+                Arena mapArena = Arena.ofConfined()) {
+            long size = ch.size();
+            if (processedOffset > size) {
+                System.out.println("File shrank to " + size + " bytes, starting over");
+                processedOffset = -1;
+            }
+            if (processedOffset < 0) {
+                MemorySegment whole = ch.map(FileChannel.MapMode.READ_ONLY, 0, size, mapArena);
+                processedOffset = CsvBinaryEncoder.skipHeader(whole);
+                if (processedOffset < 0) {
+                    return null;
+                }
+            }
+            if (size == processedOffset) {
+                return null;
+            }
+
+            // Map only the unprocessed tail; the mapping is dropped again when this round ends
+            MemorySegment tail = ch.map(FileChannel.MapMode.READ_ONLY, processedOffset,
+                    Math.min(size - processedOffset, MAX_BATCH_INPUT), mapArena);
+            NativeMemory.adviseSequential(tail, tail.byteSize());
+            long complete = CsvBinaryEncoder.endOfCompleteLines(tail, 0, tail.byteSize());
+            if (complete == 0) {
+                if (tail.byteSize() == MAX_BATCH_INPUT) {
+                    // Waiting would never help: the window cannot grow past the line's start
+                    throw new IllegalStateException("Line at offset " + processedOffset + " is longer than the "
+                            + MAX_BATCH_INPUT + " byte window, not a record row");
+                }
+                return null;
+            }
+
+            long outSize = CsvBinaryEncoder.encodedSize(tail, 0, complete);
+            ensureOutCapacity(outSize);
+            long records = CsvBinaryEncoder.encode(tail, 0, complete, outBuffer, 0);
+            System.out.println("Encoded " + records + " new records (" + outSize + " bytes) from offset "
+                    + processedOffset);
+            processedOffset += complete;
+            return outBuffer.asSlice(0, outSize);
+        }
+    }
+
+    private void ensureOutCapacity(long size) {
+        if (outBuffer != null && outBuffer.byteSize() >= size) {
+            return;
+        }
+        if (outArena != null) {
+            outArena.close();
+        }
+        outArena = TrackedArena.ofShared("follow-out");
+        long capacity = outBuffer == null ? 1024 * 1024 : outBuffer.byteSize();
+        while (capacity < size) {
+            capacity *= 2;
+        }
+        outBuffer = outArena.allocate(capacity);
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Encodes every CSV file under a directory concurrently and streams the result over a
+ * fixed number of sender connections.
+ *
+ * Files are encoded on a bounded {@link ForkJoinPool}. Files larger than
+ * {@code chunkBytes} are split at line boundaries into chunks that are forked as
+ * separate tasks, so idle workers steal chunks of big files instead of waiting for
+ * one worker to finish them. Each chunk is encoded into its own off-heap buffer and
+ * written in one piece to whichever connection is free, which keeps every connection's
+ * stream record aligned.
+ *
+ * With {@code -Dffm.cpus.encoder} set, worker {@code i} is pinned to the i-th listed core
+ * and its chunk buffers are allocated on that core's NUMA node.
+ */
+final class DirectoryIngest {
+
+    private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+
+    private final Path dir;
+    private final int parallelism;
+    private final int connections;
+    private final long chunkBytes;
+
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong records = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+
+    DirectoryIngest(Path dir, int parallelism, int connections, long chunkBytes) {
+        this.dir = dir;
+        this.parallelism = parallelism;
+        this.connections = connections;
+        this.chunkBytes = chunkBytes;
+    }
+
+    void run(String ip, int port) throws IOException, InterruptedException {
+        List<Path> csvFiles;
+        try (Stream<Path> walk = Files.walk(dir)) {
+            csvFiles = walk.filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().endsWith(".csv"))
+                    .toList();
+        }
+        System.out.println("Found " + csvFiles.size() + " CSV files in " + dir + ", encoding with "
+                + parallelism + " workers over " + connections + " connections");
+
+        BlockingQueue<SocketChannel> senders = new ArrayBlockingQueue<>(connections);
+        IoMetrics.register();
+        ForkJoinPool pool = new ForkJoinPool(parallelism, DirectoryIngest::newPinnedWorker, null, false);
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress(ip, port));
+                channel.socket().setTcpNoDelay(true);
+                senders.add(channel);
+            }
+
+            List<FileTask> tasks = new ArrayList<>(csvFiles.size());
+            for (Path file : csvFiles) {
+                tasks.add(new FileTask(file, senders));
+            }
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } finally {
+            pool.shutdown();
+            for (SocketChannel channel : senders) {
+                channel.close();
+            }
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Ingested %d files, %d records, %d bytes in %.2f s (%.1f MB/s out)%n",
+                files.get(), records.get(), bytesOut.get(), seconds, bytesOut.get() / seconds / (1024 * 1024));
+    }
+
+    private static ForkJoinWorkerThread newPinnedWorker(ForkJoinPool pool) {
+        return new ForkJoinWorkerThread(pool) {
+            @Override
+            protected void onStart() {
+                super.onStart();
+                ThreadPlacement.pinFromProperty(ThreadPlacement.ENCODER_CPUS, getPoolIndex());
+            }
+        };
+    }
+
+    @SuppressWarnings("serial") // tasks are never serialized
+    private final class FileTask extends RecursiveAction {
+        private final Path file;
+        private final BlockingQueue<SocketChannel> senders;
+
+        FileTask(Path file, BlockingQueue<SocketChannel> senders) {
+            this.file = file;
+            this.senders = senders;
+        }
+
+        @Override
+        protected void compute() {
+            // The mapping is shared by all chunk tasks of this file and released once they are done
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+                    Arena arena = Arena.ofShared()) {
+                MemorySegment csv = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena);
+                long recordsStart = CsvBinaryEncoder.skipHeader(csv);
+                if (recordsStart >= 0) {
+                    new ChunkTask(csv, recordsStart, csv.byteSize(), senders).invoke();
+                }
+                files.incrementAndGet();
+            } catch (IOException e) {
+                throw new UncheckedIOException(file.toString(), e);
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private final class ChunkTask extends RecursiveAction {
+        private final MemorySegment csv;
+        private final long from;
+        private final long to;
+        private final BlockingQueue<SocketChannel> senders;
+
+        ChunkTask(MemorySegment csv, long from, long to, BlockingQueue<SocketChannel> senders) {
+            this.csv = csv;
+            this.from = from;
+            this.to = to;
+            this.senders = senders;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkBytes) {
+                long split = nextLineStart(from + (to - from) / 2);
+                if (split > from && split < to) {
+                    invokeAll(new ChunkTask(csv, from, split, senders), new ChunkTask(csv, split, to, senders));
+                    return;
+                }
+            }
+            encodeAndSend();
+        }
+
+        private long nextLineStart(long pos) {
+            for (long i = pos; i < to; i++) {
+                if (csv.get(BYTE, i) == '\n') {
+                    return i + 1;
+                }
+            }
+            return to;
+        }
+
+        private void encodeAndSend() {
+            NativeMemory.willNeed(csv, from, to - from); // chunks run in any order, so no sequential hint
+            long size = CsvBinaryEncoder.encodedSize(csv, from, to);
+            if (size == 0) {
+                return;
+            }
+            try (TrackedArena arena = TrackedArena.ofConfined("ingest-chunk")) {
+                MemorySegment out = arena.allocate(size);
+                records.addAndGet(CsvBinaryEncoder.encode(csv, from, to, out, 0));
+
+                // Deliberately not a managed block: waiting here is the backpressure that
+                // keeps at most parallelism encoded chunks off-heap at once
+                SocketChannel channel = senders.take();
+                try {
+                    ByteBuffer buf = out.asByteBuffer();
+                    while (buf.hasRemaining()) {
+                        channel.write(buf);
+                    }
+                } finally {
+                    senders.add(channel);
+                }
+                bytesOut.addAndGet(size);
+                IoMetrics.INSTANCE.bytesSent.add(size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a sender", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Column names and types of one CSV feed and the binary record layout derived from
+ * them, the input {@link SchemaCodec} generates a codec from.
+ *
+ * Names come from the header line. Types come from an optional hint file with one
+ * {@code Column=type} line per column ({@code #} starts a comment); columns without a
+ * hint are typed from the first data row: digits make a {@code long},
+ * {@code true}/{@code false} a {@code boolean}, anything else a {@code string}.
+ *
+ * A record is a fixed header followed by the bytes of every string column in column
+ * order. The header holds the fixed-width values and a 2-byte length per string,
+ * widest first and in column order within a width, with the lengths after the values
+ * of their width. All fields are little endian and unaligned, as in
+ * {@link CsvBinaryEncoder#RECORD_LAYOUT}, which is exactly what
+ * {@code Name,Age,Mobile,External} with {@code Age=short} and
+ * {@code External=boolean} produces.
+ */
+final class FeedSchema {
+
+    enum Type {
+        LONG(ValueLayout.JAVA_LONG_UNALIGNED),
+        INT(ValueLayout.JAVA_INT_UNALIGNED),
+        SHORT(ValueLayout.JAVA_SHORT_UNALIGNED),
+        BYTE(ValueLayout.JAVA_BYTE),
+        BOOLEAN(ValueLayout.JAVA_BOOLEAN),
+        STRING(ValueLayout.JAVA_SHORT_UNALIGNED); // the length in the header
+
+        final ValueLayout headerLayout;
+
+        Type(ValueLayout headerLayout) {
+            this.headerLayout = headerLayout.withOrder(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Column {@code index} of the CSV; {@code offset} is where its value, or for a
+     * string its length, sits in the record header.
+     */
+    record Column(String name, int index, Type type, long offset) {
+
+        String fieldName() {
+            String field = name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", "_");
+            return type == Type.STRING ? field + "_length" : field;
+        }
+    }
+
+    private final List<Column> columns;
+    private final StructLayout layout;
+
+    private FeedSchema(List<String> names, List<Type> types) {
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.<Integer>comparingLong(i -> -types.get(i).headerLayout.byteSize())
+                .thenComparing(i -> types.get(i) == Type.STRING)
+                .thenComparing(i -> i));
+
+        Column[] byIndex = new Column[names.size()];
+        List<MemoryLayout> fields = new ArrayList<>();
+        long offset = 0;
+        for (int i : order) {
+            Type type = types.get(i);
+            byIndex[i] = new Column(names.get(i), i, type, offset);
+            fields.add(type.headerLayout.withName(byIndex[i].fieldName()));
+            offset += type.headerLayout.byteSize();
+        }
+        this.columns = List.of(byIndex);
+        this.layout = MemoryLayout.structLayout(fields.toArray(MemoryLayout[]::new)).withName("record");
+    }
+
+    /**
+     * Schema of the CSV in {@code csv}, whose first line is the header; {@code hints}
+     * may be null.
+     */
+    static FeedSchema read(MemorySegment csv, Path hints) throws IOException {
+        List<String> lines = firstLines(csv, 2);
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("CSV has no header line");
+        }
+        List<String> names = List.of(lines.get(0).split(",", -1));
+        List<String> sample = lines.size() > 1 ? List.of(lines.get(1).split(",", -1)) : List.of();
+        Map<String, Type> hinted = hints == null ? Map.of() : readHints(hints);
+
+        List<Type> types = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            Type type = hinted.get(names.get(i));
+            types.add(type != null ? type : infer(i < sample.size() ? sample.get(i) : ""));
+        }
+        return new FeedSchema(names, types);
+    }
+
+    /**
+     * Columns in CSV order.
+     */
+    List<Column> columns() {
+        return columns;
+    }
+
+    /**
+     * Layout of the fixed record header; string bytes follow it.
+     */
+    StructLayout layout() {
+        return layout;
+    }
+
+    /**
+     * Canonical form, equal for schemas that produce the same codec.
+     */
+    String signature() {
+        StringBuilder sb = new StringBuilder();
+        for (Column column : columns) {
+            sb.append(sb.isEmpty() ? "" : ",").append(column.name()).append(':')
+                    .append(column.type().name().toLowerCase(Locale.ROOT));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return signature() + " -> " + layout;
+    }
+
+    private static Type infer(String value) {
+        if (value.equals("true") || value.equals("false")) {
+            return Type.BOOLEAN;
+        }
+        return value.matches("-?[0-9]{1,18}") ? Type.LONG : Type.STRING;
+    }
+
+    private static Map<String, Type> readHints(Path hints) throws IOException {
+        Map<String, Type> types = new HashMap<>();
+        for (String line : Files.readAllLines(hints)) {
+            int comment = line.indexOf('#');
+            line = (comment < 0 ? line : line.substring(0, comment)).strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+            int eq = line.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Type hint without '=': " + line);
+            }
+            types.put(line.substring(0, eq).strip(),
+                    Type.valueOf(line.substring(eq + 1).strip().toUpperCase(Locale.ROOT)));
+        }
+        return types;
+    }
+
+    private static List<String> firstLines(MemorySegment csv, int count) {
+        List<String> lines = new ArrayList<>();
+        long start = 0;
+        for (long i = 0; i < csv.byteSize() && lines.size() < count; i++) {
+            if (csv.get(ValueLayout.JAVA_BYTE, i) == '\n') {
+                lines.add(line(csv, start, i));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private static String line(MemorySegment csv, long start, long end) {
+        if (end > start && csv.get(ValueLayout.JAVA_BYTE, end - 1) == '\r') {
+            end--;
+        }
+        return new String(csv.asSlice(start, end - start).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+    }
+}
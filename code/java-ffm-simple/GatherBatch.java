@@ -0,0 +1,93 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/**
+ * One batch of the gather send path: the record headers of up to {@code capacity}
+ * records plus a {@code struct iovec} array pointing at each header and at each
+ * record's name bytes in the mapped CSV. Nothing is assembled; the kernel gathers the
+ * pieces straight from where they are.
+ *
+ * The iovecs hold raw addresses, so the mapping they point into must stay open until
+ * the batch is sent.
+ */
+final class GatherBatch {
+
+    static final StructLayout IOVEC = MemoryLayout.structLayout(
+            ValueLayout.JAVA_LONG.withName("iov_base"), // raw address, written without wrapping a segment
+            ValueLayout.JAVA_LONG.withName("iov_len")).withName("iovec");
+
+    private static final VarHandle VH_IOV_BASE = IOVEC.varHandle(PathElement.groupElement("iov_base"));
+    private static final VarHandle VH_IOV_LEN = IOVEC.varHandle(PathElement.groupElement("iov_len"));
+
+    private final int capacity;
+    private final MemorySegment headers;
+    private final MemorySegment iov;
+
+    private int records;
+    private int iovCount;
+    private long bytes;
+
+    GatherBatch(Arena arena, int capacity) {
+        this.capacity = capacity;
+        this.headers = arena.allocate(CsvBinaryEncoder.RECORD_LAYOUT.byteSize() * capacity);
+        this.iov = arena.allocate(IOVEC, 2L * capacity);
+    }
+
+    MemorySegment headers() {
+        return headers;
+    }
+
+    MemorySegment iov() {
+        return iov;
+    }
+
+    int records() {
+        return records;
+    }
+
+    int iovCount() {
+        return iovCount;
+    }
+
+    long bytes() {
+        return bytes;
+    }
+
+    boolean isFull() {
+        return records == capacity;
+    }
+
+    /**
+     * Reserves the header slot of the next record and returns its offset in {@link #headers()}.
+     */
+    long nextHeader() {
+        return CsvBinaryEncoder.RECORD_LAYOUT.byteSize() * records++;
+    }
+
+    /**
+     * Appends an iovec for {@code [offset, offset + length)} of {@code segment}; empty
+     * pieces are skipped.
+     */
+    void add(MemorySegment segment, long offset, long length) {
+        if (length == 0) {
+            return;
+        }
+        Objects.checkFromIndexSize(offset, length, segment.byteSize());
+        long entry = IOVEC.byteSize() * iovCount++;
+        VH_IOV_BASE.set(iov, entry, segment.address() + offset);
+        VH_IOV_LEN.set(iov, entry, length);
+        bytes += length;
+    }
+
+    void clear() {
+        records = 0;
+        iovCount = 0;
+        bytes = 0;
+    }
+}
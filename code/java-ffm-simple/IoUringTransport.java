@@ -0,0 +1,141 @@
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * io_uring transport: every I/O thread drives its own thread-local ring and its own
+ * {@code SO_REUSEPORT} listener, so the kernel spreads connections over the threads
+ * and they share nothing but the buffer pool. Within a thread all connections are
+ * served concurrently, each with one recv in flight, tagged
+ * {@code connection << 2 | op} as in the echo server.
+ *
+ * The loop never waits for a buffer. A connection whose session stalls on an empty
+ * pool gets no new recv; while any are stalled the loop reaps with a short timeout
+ * and retries them, so the others keep being served meanwhile.
+ */
+final class IoUringTransport implements ReceiverEngine.Transport {
+
+    private static final int OP_ACCEPT = 0;
+    private static final int OP_RECV = 1;
+    private static final int QUEUE_DEPTH = 1024; // SQEs are submitted early when more ops are queued
+    private static final long RESUME_NANOS = 1_000_000; // reap timeout while connections wait for a buffer
+
+    private final SymbolLookup lib;
+    private final int maxConnections; // per I/O thread
+    private final MethodHandle mhListen;
+    private final IoEvents.IoOp opProbe = new IoEvents.IoOp(); // only asked whether it is enabled
+
+    IoUringTransport(SymbolLookup lib, int maxConnections) {
+        this.lib = lib;
+        this.maxConnections = maxConnections;
+        this.mhListen = Linker.nativeLinker().downcallHandle(lib.find("io_uring_listen_reuseport").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    }
+
+    @Override
+    public String name() {
+        return "io_uring";
+    }
+
+    @Override
+    public void serve(ReceiverEngine engine, int index, int threads) throws Throwable {
+        AsyncRing ring = new AsyncRing(lib, 256);
+        ring.init(QUEUE_DEPTH);
+        int listenFd = (int) mhListen.invokeExact(engine.port(), 1024);
+        if (listenFd < 0) {
+            throw new IllegalStateException("io_uring_listen_reuseport failed, fd=" + listenFd);
+        }
+
+        int[] fds = new int[maxConnections];
+        ReceiverEngine.Session[] sessions = new ReceiverEngine.Session[maxConnections];
+        int[] stalled = new int[maxConnections]; // connections without a recv until a buffer frees up
+        int stalledCount = 0;
+        int freeSlot = 0;
+
+        try {
+            ring.queueAccept(listenFd, OP_ACCEPT);
+            while (true) {
+                int n = ring.reap(stalledCount == 0 ? -1 : RESUME_NANOS);
+                for (int i = 0; i < n; i++) {
+                    long userData = ring.userData(i);
+                    int res = ring.result(i);
+                    int conn = (int) (userData >>> 2);
+                    if ((userData & 3) == OP_ACCEPT) {
+                        ring.queueAccept(listenFd, OP_ACCEPT);
+                        if (res < 0) {
+                            System.err.println("Accept failed: " + res);
+                            continue;
+                        }
+                        while (freeSlot < maxConnections && sessions[freeSlot] != null) {
+                            freeSlot++;
+                        }
+                        ReceiverEngine.Session session = freeSlot < maxConnections ? engine.tryOpen(index, "fd " + res) : null;
+                        if (session == null) {
+                            System.err.println("No free connection slot or buffer, refusing fd " + res);
+                            ring.closeFd(res);
+                            continue;
+                        }
+                        fds[freeSlot] = res;
+                        sessions[freeSlot] = session;
+                        queueRecv(ring, session, res, freeSlot);
+                    } else {
+                        ReceiverEngine.Session session = sessions[conn];
+                        recordRecv(fds[conn], res);
+                        if (res <= 0) {
+                            if (res < 0) {
+                                System.err.println("recv failed on fd " + fds[conn] + ": " + res);
+                            }
+                            ring.closeFd(fds[conn]);
+                            session.close();
+                            sessions[conn] = null;
+                            freeSlot = Math.min(freeSlot, conn);
+                            continue;
+                        }
+                        if (session.received(res)) {
+                            queueRecv(ring, session, fds[conn], conn);
+                        } else {
+                            stalled[stalledCount++] = conn;
+                        }
+                    }
+                }
+                int still = 0;
+                for (int i = 0; i < stalledCount; i++) {
+                    int conn = stalled[i];
+                    if (sessions[conn].resume()) {
+                        queueRecv(ring, sessions[conn], fds[conn], conn);
+                    } else {
+                        stalled[still++] = conn;
+                    }
+                }
+                stalledCount = still;
+            }
+        } finally {
+            ring.closeFd(listenFd);
+            for (int conn = 0; conn < maxConnections; conn++) {
+                if (sessions[conn] != null) {
+                    ring.closeFd(fds[conn]);
+                    sessions[conn].close();
+                }
+            }
+            ring.close();
+        }
+    }
+
+    private void recordRecv(int fd, int res) {
+        if (opProbe.isEnabled()) {
+            IoEvents.IoOp event = new IoEvents.IoOp();
+            event.op = "recv";
+            event.fd = fd;
+            event.result = res;
+            event.commit();
+        }
+    }
+
+    private static void queueRecv(AsyncRing ring, ReceiverEngine.Session session, int fd, int conn) throws Throwable {
+        MemorySegment free = session.free();
+        ring.queueRecv(fd, free, free.byteSize(), ((long) conn << 2) | OP_RECV);
+    }
+}
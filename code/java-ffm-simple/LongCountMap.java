@@ -0,0 +1,152 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * {@code long} to {@code long} counters in off-heap memory, with the same probing,
+ * in-place growth and key 0 handling as {@link LongHashSet}. Each slot holds the key
+ * and its count next to each other, so a lookup touches one cache line. Not
+ * thread-safe.
+ */
+final class LongCountMap implements AutoCloseable {
+
+    private static final long SLOT_SIZE = 2 * Long.BYTES;
+
+    /**
+     * Receives the entries of {@link #forEach}.
+     */
+    interface EntryConsumer {
+        void accept(long key, long count);
+    }
+
+    private final String name;
+    private final Arena arena;
+    private final MemorySegment reserved;
+    private MemorySegment slots;
+    private long mask;
+    private long resizeAt;
+    private long size;
+    private boolean containsZero;
+    private long zeroCount;
+
+    LongCountMap(String name, long expected) {
+        this.name = name;
+        long capacity = LongHashSet.capacityFor(expected);
+        this.arena = TrackedArena.ofShared(name);
+        this.reserved = NativeMemory.reserve(arena, Math.max(LongHashSet.RESERVED_BYTES, capacity * SLOT_SIZE));
+        this.slots = NativeMemory.commit(arena, reserved, 0, capacity * SLOT_SIZE);
+        resized(capacity);
+    }
+
+    /**
+     * Adds {@code delta} to the count of {@code key}, which starts at 0.
+     */
+    void add(long key, long delta) {
+        if (key == 0) {
+            if (!containsZero) {
+                containsZero = true;
+                size++;
+            }
+            zeroCount += delta;
+            return;
+        }
+        long i = LongHashSet.mix(key) & mask;
+        while (true) {
+            long slot = slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i);
+            if (slot == key) {
+                long count = slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i + 1);
+                slots.setAtIndex(ValueLayout.JAVA_LONG, 2 * i + 1, count + delta);
+                return;
+            }
+            if (slot == 0) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        slots.setAtIndex(ValueLayout.JAVA_LONG, 2 * i, key);
+        slots.setAtIndex(ValueLayout.JAVA_LONG, 2 * i + 1, delta);
+        if (++size > resizeAt) {
+            grow();
+        }
+    }
+
+    /**
+     * Count of {@code key}, 0 when it was never added.
+     */
+    long get(long key) {
+        if (key == 0) {
+            return zeroCount;
+        }
+        long i = LongHashSet.mix(key) & mask;
+        while (true) {
+            long slot = slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i);
+            if (slot == key) {
+                return slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i + 1);
+            }
+            if (slot == 0) {
+                return 0;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Visits every key with its count, in table order.
+     */
+    void forEach(EntryConsumer consumer) {
+        if (containsZero) {
+            consumer.accept(0, zeroCount);
+        }
+        for (long i = 0; i <= mask; i++) {
+            long key = slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i);
+            if (key != 0) {
+                consumer.accept(key, slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i + 1));
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    // Rehashes in place like LongHashSet.grow, moving each count with its key
+    private void grow() {
+        long oldCapacity = mask + 1;
+        if (slots.byteSize() * 2 > reserved.byteSize()) {
+            throw new IllegalStateException(name + " outgrew its " + reserved.byteSize() + " byte reservation");
+        }
+        slots = NativeMemory.commit(arena, reserved, slots.byteSize(), slots.byteSize() * 2);
+        resized(oldCapacity * 2);
+        for (long i = 0; i < oldCapacity; i++) {
+            if (slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i) != 0) {
+                move(i);
+            }
+        }
+        for (long i = oldCapacity; slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i) != 0; i = (i + 1) & mask) {
+            move(i);
+        }
+    }
+
+    // Takes the entry out of slot j and places it again
+    private void move(long j) {
+        long key = slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * j);
+        long count = slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * j + 1);
+        slots.setAtIndex(ValueLayout.JAVA_LONG, 2 * j, 0);
+        long i = LongHashSet.mix(key) & mask;
+        while (slots.getAtIndex(ValueLayout.JAVA_LONG, 2 * i) != 0) {
+            i = (i + 1) & mask;
+        }
+        slots.setAtIndex(ValueLayout.JAVA_LONG, 2 * i, key);
+        slots.setAtIndex(ValueLayout.JAVA_LONG, 2 * i + 1, count);
+    }
+
+    private void resized(long capacity) {
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+}
@@ -0,0 +1,165 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/**
+ * Set of {@code long}s in off-heap memory: open addressing with linear probing over
+ * one array of 8-byte slots, so an entry costs 8 bytes of table and no object. Slot
+ * value 0 means free, which is why the key 0 is kept in a flag of its own.
+ *
+ * The table sits at the front of an address space reservation
+ * ({@link NativeMemory#reserve}). When it is three quarters full the pages behind it
+ * are committed and the keys rehashed in place into twice the slots, so growing never
+ * holds an old and a new table at once. The reservation gets huge pages like the
+ * receive buffers ({@code -Dffm.hugepages}). Not thread-safe.
+ */
+final class LongHashSet implements AutoCloseable {
+
+    /**
+     * Address space reserved per table; only the committed part costs memory.
+     */
+    static final long RESERVED_BYTES = 64L << 30;
+
+    private static final long MIN_CAPACITY = 1024;
+
+    private final String name;
+    private final Arena arena;
+    private final MemorySegment reserved;
+    private MemorySegment slots;
+    private long mask;
+    private long resizeAt;
+    private long size;
+    private boolean containsZero;
+
+    /**
+     * Creates a set sized for {@code expected} keys without a resize; it grows past that.
+     */
+    LongHashSet(String name, long expected) {
+        this.name = name;
+        long capacity = capacityFor(expected);
+        this.arena = TrackedArena.ofShared(name);
+        this.reserved = NativeMemory.reserve(arena, Math.max(RESERVED_BYTES, capacity * Long.BYTES));
+        this.slots = NativeMemory.commit(arena, reserved, 0, capacity * Long.BYTES); // zeroed, so every slot starts free
+        resized(capacity);
+    }
+
+    /**
+     * Adds {@code key}; returns {@code false} if it was already present.
+     */
+    boolean add(long key) {
+        if (key == 0) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        long i = mix(key) & mask;
+        while (true) {
+            long slot = slots.getAtIndex(ValueLayout.JAVA_LONG, i);
+            if (slot == key) {
+                return false;
+            }
+            if (slot == 0) {
+                break;
+            }
+            i = (i + 1) & mask;
+        }
+        slots.setAtIndex(ValueLayout.JAVA_LONG, i, key);
+        if (++size > resizeAt) {
+            grow();
+        }
+        return true;
+    }
+
+    boolean contains(long key) {
+        if (key == 0) {
+            return containsZero;
+        }
+        long i = mix(key) & mask;
+        while (true) {
+            long slot = slots.getAtIndex(ValueLayout.JAVA_LONG, i);
+            if (slot == key) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * Off-heap bytes held by the table.
+     */
+    long byteSize() {
+        return slots.byteSize();
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+
+    private void grow() {
+        long oldCapacity = mask + 1;
+        if (slots.byteSize() * 2 > reserved.byteSize()) {
+            throw new IllegalStateException(name + " outgrew its " + reserved.byteSize() + " byte reservation");
+        }
+        slots = NativeMemory.commit(arena, reserved, slots.byteSize(), slots.byteSize() * 2);
+        resized(oldCapacity * 2);
+        // The new mask adds one bit, so a key's home slot stays or moves up by the old
+        // capacity. Taking the keys out and placing them again in slot order keeps every
+        // probe run intact, since the slots before a key are final when it is placed...
+        for (long i = 0; i < oldCapacity; i++) {
+            long key = slots.getAtIndex(ValueLayout.JAVA_LONG, i);
+            if (key != 0) {
+                slots.setAtIndex(ValueLayout.JAVA_LONG, i, 0);
+                place(key);
+            }
+        }
+        // ...except for the run that wrapped around the old end: its keys were placed
+        // behind slots that had not moved yet and ended up in the run at the old end
+        for (long i = oldCapacity; slots.getAtIndex(ValueLayout.JAVA_LONG, i) != 0; i = (i + 1) & mask) {
+            long key = slots.getAtIndex(ValueLayout.JAVA_LONG, i);
+            slots.setAtIndex(ValueLayout.JAVA_LONG, i, 0);
+            place(key);
+        }
+    }
+
+    private void place(long key) {
+        long i = mix(key) & mask;
+        while (slots.getAtIndex(ValueLayout.JAVA_LONG, i) != 0) {
+            i = (i + 1) & mask;
+        }
+        slots.setAtIndex(ValueLayout.JAVA_LONG, i, key);
+    }
+
+    private void resized(long capacity) {
+        mask = capacity - 1;
+        resizeAt = capacity / 4 * 3;
+    }
+
+    /**
+     * Smallest power of two that holds {@code expected} keys below the load limit.
+     */
+    static long capacityFor(long expected) {
+        long needed = Math.max(MIN_CAPACITY, expected / 3 * 4 + 1);
+        return Long.highestOneBit(needed - 1) << 1;
+    }
+
+    /**
+     * Spreads every key bit over the low bits used as the slot index, so sequential
+     * keys such as phone numbers do not fill one run of neighbouring slots.
+     */
+    static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+}
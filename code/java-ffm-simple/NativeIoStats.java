@@ -0,0 +1,104 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.GroupLayout;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Read-only view of the {@code struct io_stats} counters the C shim keeps in its own
+ * memory. The shim bumps them with relaxed atomics; reads here are opaque, so a sample
+ * is never torn per counter but the counters are not a consistent snapshot together.
+ *
+ * The view lives as long as the arena the shim was loaded with: once that arena is
+ * closed the library is unloaded, the view is no longer {@link #attached()} and reads
+ * return 0 instead of touching unmapped memory.
+ */
+public final class NativeIoStats {
+
+    static final GroupLayout STATS_LAYOUT = MemoryLayout.structLayout(
+            ValueLayout.JAVA_LONG.withName("submits"),
+            ValueLayout.JAVA_LONG.withName("sqes"),
+            ValueLayout.JAVA_LONG.withName("completions"),
+            ValueLayout.JAVA_LONG.withName("wait_ns"),
+            ValueLayout.JAVA_LONG.withName("bytes_sent"),
+            ValueLayout.JAVA_LONG.withName("bytes_received"),
+            ValueLayout.JAVA_LONG.withName("errors")).withName("io_stats");
+
+    private static final VarHandle VH_SUBMITS = STATS_LAYOUT.varHandle(PathElement.groupElement("submits"));
+    private static final VarHandle VH_SQES = STATS_LAYOUT.varHandle(PathElement.groupElement("sqes"));
+    private static final VarHandle VH_COMPLETIONS = STATS_LAYOUT.varHandle(PathElement.groupElement("completions"));
+    private static final VarHandle VH_WAIT_NS = STATS_LAYOUT.varHandle(PathElement.groupElement("wait_ns"));
+    private static final VarHandle VH_BYTES_SENT = STATS_LAYOUT.varHandle(PathElement.groupElement("bytes_sent"));
+    private static final VarHandle VH_BYTES_RECEIVED = STATS_LAYOUT.varHandle(PathElement.groupElement("bytes_received"));
+    private static final VarHandle VH_ERRORS = STATS_LAYOUT.varHandle(PathElement.groupElement("errors"));
+
+    private final MemorySegment stats;
+
+    private NativeIoStats(MemorySegment stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Maps the counters of a shim loaded with {@code libArena}, or returns null for a
+     * library built without them.
+     */
+    public static NativeIoStats attach(SymbolLookup lib, Arena libArena) throws Throwable {
+        MemorySegment statsAddr = lib.find("io_uring_stats").orElse(null);
+        if (statsAddr == null) {
+            return null;
+        }
+        MethodHandle mhStats = Linker.nativeLinker().downcallHandle(statsAddr,
+                FunctionDescriptor.of(ValueLayout.ADDRESS));
+        MemorySegment stats = (MemorySegment) mhStats.invokeExact();
+        return new NativeIoStats(stats.reinterpret(STATS_LAYOUT.byteSize(), libArena, null));
+    }
+
+    /**
+     * False once the arena that loaded the shim has been closed.
+     */
+    public boolean attached() {
+        return stats.scope().isAlive();
+    }
+
+    public long submits() {
+        return read(VH_SUBMITS);
+    }
+
+    public long sqes() {
+        return read(VH_SQES);
+    }
+
+    public long completions() {
+        return read(VH_COMPLETIONS);
+    }
+
+    public long waitNanos() {
+        return read(VH_WAIT_NS);
+    }
+
+    public long bytesSent() {
+        return read(VH_BYTES_SENT);
+    }
+
+    public long bytesReceived() {
+        return read(VH_BYTES_RECEIVED);
+    }
+
+    public long errors() {
+        return read(VH_ERRORS);
+    }
+
+    private long read(VarHandle counter) {
+        try {
+            return (long) counter.getOpaque(stats, 0L);
+        } catch (IllegalStateException e) {
+            return 0; // the arena was closed after attached() was checked
+        }
+    }
+}
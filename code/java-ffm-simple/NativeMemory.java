@@ -0,0 +1,241 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Page-size and access-pattern aware memory through libc {@code mmap}/{@code madvise}.
+ *
+ * {@link #allocate} backs large buffers with huge pages, selected by the
+ * {@code ffm.hugepages} system property:
+ * <ul>
+ * <li>{@code off} (default): a plain {@link Arena#allocate}</li>
+ * <li>{@code thp}: anonymous mmap aligned to 2 MB plus {@code MADV_HUGEPAGE}, so
+ * transparent huge pages are used even when THP is set to {@code madvise}</li>
+ * <li>{@code explicit}: {@code MAP_HUGETLB} from the reserved hugetlbfs pool
+ * ({@code vm.nr_hugepages}), falling back to {@code thp} when the pool is empty</li>
+ * </ul>
+ * The mapping is unmapped when the given arena closes. {@link #reserve} and
+ * {@link #commit} let a table grow in place inside one mapping. {@link #adviseSequential}
+ * and {@link #willNeed} give the kernel read-ahead hints for mapped input files.
+ */
+final class NativeMemory {
+
+    enum HugePages {
+        OFF, THP, EXPLICIT
+    }
+
+    static final HugePages MODE = HugePages.valueOf(System.getProperty("ffm.hugepages", "off").toUpperCase());
+    static final long HUGE_PAGE_SIZE = 2L * 1024 * 1024;
+
+    private static final int PROT_NONE = 0x0;
+    private static final int PROT_READ = 0x1;
+    private static final int PROT_WRITE = 0x2;
+    private static final int MAP_PRIVATE = 0x02;
+    private static final int MAP_ANONYMOUS = 0x20;
+    private static final int MAP_HUGETLB = 0x40000;
+    private static final int MADV_SEQUENTIAL = 2;
+    private static final int MADV_WILLNEED = 3;
+    private static final int MADV_HUGEPAGE = 14;
+    private static final long MAP_FAILED = -1L;
+
+    private static final StructLayout CAPTURED_STATE = Linker.Option.captureStateLayout();
+    private static final VarHandle VH_ERRNO = CAPTURED_STATE.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+    private static final MethodHandle MH_MMAP;
+    private static final MethodHandle MH_MUNMAP;
+    private static final MethodHandle MH_MPROTECT;
+    private static final MethodHandle MH_MADVISE;
+    private static final long PAGE_SIZE;
+
+    static {
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        MH_MMAP = linker.downcallHandle(libc.find("mmap").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                        ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG),
+                Linker.Option.captureCallState("errno"));
+        MH_MUNMAP = linker.downcallHandle(libc.find("munmap").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+        MH_MPROTECT = linker.downcallHandle(libc.find("mprotect").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                        ValueLayout.JAVA_INT),
+                Linker.Option.captureCallState("errno"));
+        MH_MADVISE = linker.downcallHandle(libc.find("madvise").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                        ValueLayout.JAVA_INT));
+        MethodHandle getPageSize = linker.downcallHandle(libc.find("getpagesize").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT));
+        try {
+            PAGE_SIZE = (int) getPageSize.invokeExact();
+        } catch (Throwable t) {
+            throw new ExceptionInInitializerError(t);
+        }
+    }
+
+    private NativeMemory() {
+    }
+
+    /**
+     * Allocates {@code byteSize} zeroed bytes that live as long as {@code arena}, backed
+     * by huge pages according to {@link #MODE}. Small buffers always use the arena.
+     */
+    static MemorySegment allocate(Arena arena, long byteSize) {
+        if (MODE == HugePages.OFF || byteSize < HUGE_PAGE_SIZE) {
+            return arena.allocate(byteSize, 4096);
+        }
+        long mapped = roundUp(byteSize, HUGE_PAGE_SIZE);
+        try (Arena tmp = Arena.ofConfined()) {
+            MemorySegment errno = tmp.allocate(CAPTURED_STATE);
+            MemorySegment base = null;
+            if (MODE == HugePages.EXPLICIT) {
+                base = mmap(errno, mapped, PROT_READ | PROT_WRITE, MAP_HUGETLB);
+                if (base == null) {
+                    System.err.println("MAP_HUGETLB failed (errno " + (int) VH_ERRNO.get(errno, 0L)
+                            + "), check vm.nr_hugepages; falling back to transparent huge pages");
+                }
+            }
+            if (base == null) {
+                base = mapAligned(errno, mapped, PROT_READ | PROT_WRITE);
+                madvise(base, 0, mapped, MADV_HUGEPAGE);
+            }
+            if (arena instanceof TrackedArena tracked) {
+                tracked.record(mapped);
+            }
+            return base.reinterpret(mapped, arena, segment -> munmap(segment, mapped)).asSlice(0, byteSize);
+        }
+    }
+
+    /**
+     * Reserves {@code byteSize} bytes of address space that live as long as
+     * {@code arena}, for a table that grows in place: no memory is committed and the
+     * pages cannot be touched until {@link #commit} opens them. With huge pages enabled
+     * the region is 2 MB aligned and advised for transparent huge pages; hugetlbfs would
+     * take the whole reservation from the pool up front.
+     */
+    static MemorySegment reserve(Arena arena, long byteSize) {
+        long mapped = MODE == HugePages.OFF ? roundUp(byteSize, PAGE_SIZE) : roundUp(byteSize, HUGE_PAGE_SIZE);
+        try (Arena tmp = Arena.ofConfined()) {
+            MemorySegment errno = tmp.allocate(CAPTURED_STATE);
+            MemorySegment base;
+            if (MODE == HugePages.OFF) {
+                base = mmap(errno, mapped, PROT_NONE, 0);
+                if (base == null) {
+                    throw new OutOfMemoryError("Reserving " + mapped + " bytes failed, errno "
+                            + (int) VH_ERRNO.get(errno, 0L));
+                }
+            } else {
+                base = mapAligned(errno, mapped, PROT_NONE);
+                madvise(base, 0, mapped, MADV_HUGEPAGE);
+            }
+            return base.reinterpret(mapped, arena, segment -> munmap(segment, mapped)).asSlice(0, byteSize);
+        }
+    }
+
+    /**
+     * Opens {@code [from, to)} of a region from {@link #reserve} for reading and writing
+     * and returns its first {@code to} bytes. Pages read as zero until written and cost
+     * memory only from then on; they are accounted to {@code arena} if it is tracked.
+     */
+    static MemorySegment commit(Arena arena, MemorySegment reserved, long from, long to) {
+        int ret;
+        int error;
+        try (Arena tmp = Arena.ofConfined()) {
+            MemorySegment errno = tmp.allocate(CAPTURED_STATE);
+            ret = (int) MH_MPROTECT.invokeExact(errno, reserved.asSlice(from, to - from), to - from,
+                    PROT_READ | PROT_WRITE);
+            error = (int) VH_ERRNO.get(errno, 0L);
+        } catch (Throwable t) {
+            throw new IllegalStateException("mprotect failed", t);
+        }
+        if (ret != 0) {
+            throw new OutOfMemoryError("Committing " + (to - from) + " bytes failed, errno " + error);
+        }
+        if (arena instanceof TrackedArena tracked) {
+            tracked.record(to - from);
+        }
+        return reserved.asSlice(0, to);
+    }
+
+    /**
+     * Hints that {@code mapped} will be read front to back once: the kernel reads ahead
+     * aggressively and may drop pages behind the reader. The first {@code window} bytes
+     * are requested right away.
+     */
+    static void adviseSequential(MemorySegment mapped, long window) {
+        madvise(mapped, 0, mapped.byteSize(), MADV_SEQUENTIAL);
+        willNeed(mapped, 0, window);
+    }
+
+    /**
+     * Starts asynchronous read-ahead of {@code [offset, offset + length)} of a mapped
+     * file, so a later pass over that range does not block on page faults.
+     */
+    static void willNeed(MemorySegment mapped, long offset, long length) {
+        if (offset < mapped.byteSize()) {
+            madvise(mapped, offset, Math.min(length, mapped.byteSize() - offset), MADV_WILLNEED);
+        }
+    }
+
+    private static MemorySegment mmap(MemorySegment errno, long length, int prot, int extraFlags) {
+        try {
+            MemorySegment addr = (MemorySegment) MH_MMAP.invokeExact(errno, MemorySegment.NULL, length, prot,
+                    MAP_PRIVATE | MAP_ANONYMOUS | extraFlags, -1, 0L);
+            return addr.address() == MAP_FAILED ? null : addr;
+        } catch (Throwable t) {
+            throw new IllegalStateException("mmap failed", t);
+        }
+    }
+
+    // mmap only guarantees base page alignment, so map one huge page more and trim the ends
+    private static MemorySegment mapAligned(MemorySegment errno, long length, int prot) {
+        MemorySegment raw = mmap(errno, length + HUGE_PAGE_SIZE, prot, 0);
+        if (raw == null) {
+            throw new OutOfMemoryError("mmap of " + length + " bytes failed, errno " + (int) VH_ERRNO.get(errno, 0L));
+        }
+        long start = raw.address();
+        long aligned = roundUp(start, HUGE_PAGE_SIZE);
+        long head = aligned - start;
+        long tail = HUGE_PAGE_SIZE - head;
+        if (head > 0) {
+            munmap(MemorySegment.ofAddress(start), head);
+        }
+        if (tail > 0) {
+            munmap(MemorySegment.ofAddress(aligned + length), tail);
+        }
+        return MemorySegment.ofAddress(aligned);
+    }
+
+    private static void munmap(MemorySegment addr, long length) {
+        try {
+            int ret = (int) MH_MUNMAP.invokeExact(addr, length);
+            if (ret != 0) {
+                System.err.println("munmap of " + length + " bytes failed");
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("munmap failed", t);
+        }
+    }
+
+    // madvise needs a page aligned start; advice is only a hint, so failures are ignored
+    private static void madvise(MemorySegment segment, long offset, long length, int advice) {
+        long start = segment.address() + offset;
+        long aligned = start & -PAGE_SIZE;
+        try {
+            int ignored = (int) MH_MADVISE.invokeExact(MemorySegment.ofAddress(aligned), length + (start - aligned),
+                    advice);
+        } catch (Throwable t) {
+            throw new IllegalStateException("madvise failed", t);
+        }
+    }
+
+    private static long roundUp(long value, long multiple) {
+        return (value + multiple - 1) / multiple * multiple;
+    }
+}
@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Portable transport on plain NIO, as the baseline the io_uring transport has to beat.
+ *
+ * Every I/O thread binds its own {@code SO_REUSEPORT} listener and accepts on it;
+ * each client then gets a virtual thread that reads with a blocking
+ * {@link SocketChannel}. The buffers are off-heap, so NIO reads straight into them
+ * through a direct {@link ByteBuffer} view instead of a temporary direct buffer. When
+ * every buffer is leased, new clients wait in {@link ReceiverEngine#open}, which parks
+ * only their virtual thread. How many carriers run the virtual threads is set with
+ * {@code -Djdk.virtualThreadScheduler.parallelism}.
+ */
+final class NioTransport implements ReceiverEngine.Transport {
+
+    @Override
+    public String name() {
+        return "nio";
+    }
+
+    @Override
+    public void serve(ReceiverEngine engine, int index, int threads) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            // Set before bind so accepted sockets inherit it and negotiate a large window
+            server.setOption(StandardSocketOptions.SO_RCVBUF, (int) engine.bufferSize());
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            if (threads > 1) {
+                server.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            server.bind(new InetSocketAddress(engine.port()), 1024);
+
+            Thread.Builder clients = Thread.ofVirtual().name("nio-" + index + "-", 1);
+            while (true) {
+                SocketChannel client = server.accept();
+                clients.start(() -> serve(engine, index, client));
+            }
+        }
+    }
+
+    private static void serve(ReceiverEngine engine, int index, SocketChannel client) {
+        ReceiverEngine.Session session = null;
+        try (client) {
+            client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            session = engine.open(index, String.valueOf(client.getRemoteAddress()));
+            MemorySegment viewed = session.buffer();
+            ByteBuffer view = viewed.asByteBuffer();
+            while (true) {
+                if (session.buffer() != viewed) { // a handler kept the last one
+                    viewed = session.buffer();
+                    view = viewed.asByteBuffer();
+                }
+                view.limit(view.capacity()).position((int) session.filled());
+                int n = client.read(view);
+                if (n < 0) {
+                    break;
+                }
+                session.received(n);
+            }
+        } catch (IOException e) {
+            System.err.println("NIO connection failed: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Prints every batch and its first record, for watching a small transfer by eye.
+ */
+final class PrintHandler implements BatchHandler {
+
+    @Override
+    public void onConnect(Connection connection) {
+        System.out.println("Client connected over " + connection.transport() + ": " + connection.remote());
+    }
+
+    @Override
+    public boolean onBatch(RecordBatch batch) {
+        MemorySegment records = batch.segment();
+        System.out.println("Received " + records.byteSize() + " bytes, " + batch.records() + " records from connection "
+                + batch.connection().id() + ", first: " + RecordDecoder.name(records, 0) + ", age "
+                + RecordDecoder.age(records, 0) + ", mobile " + RecordDecoder.mobile(records, 0) + ", external "
+                + RecordDecoder.external(records, 0));
+        return true;
+    }
+
+    @Override
+    public void onDisconnect(Connection connection) {
+        System.out.println("Client disconnected: " + connection.remote());
+    }
+}
@@ -0,0 +1,52 @@
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Complete records received on one connection, as handed to a {@link BatchHandler};
+ * plain bytes with {@link RecordFramer#RAW}, whose batches report no records.
+ *
+ * {@link #segment()} is a zero-copy view of the front of a pooled receive buffer.
+ * A handler that returns {@code true} from {@link BatchHandler#onBatch} gives the
+ * buffer straight back to the connection. One that returns {@code false} keeps it,
+ * e.g. to process it on another thread, and must then call {@link #release()}
+ * exactly once when done.
+ */
+final class RecordBatch {
+
+    private final BatchHandler.Connection connection;
+    private final MemorySegment buffer;
+    private final MemorySegment segment;
+    private final int records;
+    private final BufferPool pool;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    RecordBatch(BatchHandler.Connection connection, MemorySegment buffer, long length, int records, BufferPool pool) {
+        this.connection = connection;
+        this.buffer = buffer;
+        this.segment = buffer.asSlice(0, length);
+        this.records = records;
+        this.pool = pool;
+    }
+
+    BatchHandler.Connection connection() {
+        return connection;
+    }
+
+    MemorySegment segment() {
+        return segment;
+    }
+
+    int records() {
+        return records;
+    }
+
+    /**
+     * Returns the buffer of a batch its handler kept to the pool.
+     */
+    void release() {
+        if (!released.compareAndSet(false, true)) {
+            throw new IllegalStateException("Batch of connection " + connection.id() + " released twice");
+        }
+        pool.release(buffer);
+    }
+}
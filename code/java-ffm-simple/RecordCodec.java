@@ -0,0 +1,36 @@
+import java.lang.foreign.MemorySegment;
+
+/**
+ * CSV to binary codec for one {@link FeedSchema}, generated by {@link SchemaCodec}.
+ * The encode side works like {@link CsvBinaryEncoder}: on byte ranges of complete
+ * lines, in a sizing pass and an encoding pass.
+ */
+interface RecordCodec {
+
+    FeedSchema schema();
+
+    /**
+     * Binary size of the complete lines in {@code [from, to)}.
+     */
+    long encodedSize(MemorySegment csv, long from, long to);
+
+    /**
+     * Writes the complete lines in {@code [from, to)} to {@code out} starting at
+     * {@code outOffset}, which must have {@link #encodedSize} bytes free. Returns the
+     * number of records written.
+     */
+    long encode(MemorySegment csv, long from, long to, MemorySegment out, long outOffset);
+
+    /**
+     * Offset of the record after the one at {@code offset}.
+     */
+    long next(MemorySegment records, long offset);
+
+    /**
+     * Writes the records in {@code [from, to)} back to CSV lines in {@code out} starting
+     * at {@code outOffset}, booleans as {@code 1} or {@code 0}; returns the end of the
+     * last line. Fails with {@link IndexOutOfBoundsException} when {@code out} is too
+     * small.
+     */
+    long decode(MemorySegment records, long from, long to, MemorySegment out, long outOffset);
+}
@@ -0,0 +1,98 @@
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads records of the binary format written by {@link CsvBinaryEncoder} in place:
+ * a {@link CsvBinaryEncoder#RECORD_LAYOUT} header followed by {@code name_length}
+ * name bytes. Records are not aligned, so every accessor takes the byte offset of a
+ * record's header.
+ */
+final class RecordDecoder {
+
+    static final long HEADER_SIZE = CsvBinaryEncoder.RECORD_LAYOUT.byteSize();
+
+    private static final VarHandle VH_MOBILE = CsvBinaryEncoder.RECORD_LAYOUT
+            .varHandle(PathElement.groupElement("mobile"));
+    private static final VarHandle VH_AGE = CsvBinaryEncoder.RECORD_LAYOUT
+            .varHandle(PathElement.groupElement("age"));
+    private static final VarHandle VH_NAME_LENGTH = CsvBinaryEncoder.RECORD_LAYOUT
+            .varHandle(PathElement.groupElement("name_length"));
+    private static final VarHandle VH_EXTERNAL = CsvBinaryEncoder.RECORD_LAYOUT
+            .varHandle(PathElement.groupElement("external"));
+
+    /**
+     * Frames a stream of these records for the {@link ReceiverEngine}.
+     */
+    static final RecordFramer.Framing FRAMING = new RecordFramer.Framing() {
+        @Override
+        public long completeEnd(MemorySegment buffer, long filled) {
+            return RecordDecoder.completeEnd(buffer, 0, filled);
+        }
+
+        @Override
+        public int count(MemorySegment buffer, long end) {
+            return RecordDecoder.count(buffer, 0, end);
+        }
+    };
+
+    private RecordDecoder() {
+    }
+
+    static long mobile(MemorySegment seg, long offset) {
+        return (long) VH_MOBILE.get(seg, offset);
+    }
+
+    static short age(MemorySegment seg, long offset) {
+        return (short) VH_AGE.get(seg, offset);
+    }
+
+    static int nameLength(MemorySegment seg, long offset) {
+        return Short.toUnsignedInt((short) VH_NAME_LENGTH.get(seg, offset));
+    }
+
+    static boolean external(MemorySegment seg, long offset) {
+        return (boolean) VH_EXTERNAL.get(seg, offset);
+    }
+
+    static String name(MemorySegment seg, long offset) {
+        byte[] bytes = seg.asSlice(offset + HEADER_SIZE, nameLength(seg, offset)).toArray(ValueLayout.JAVA_BYTE);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Offset of the record after the one at {@code offset}.
+     */
+    static long next(MemorySegment seg, long offset) {
+        return offset + HEADER_SIZE + nameLength(seg, offset);
+    }
+
+    /**
+     * End of the last record in {@code [from, to)} that is complete, i.e. whose header
+     * and name both lie inside the range; {@code from} when there is none.
+     */
+    static long completeEnd(MemorySegment seg, long from, long to) {
+        long offset = from;
+        while (offset + HEADER_SIZE <= to) {
+            long next = next(seg, offset);
+            if (next > to) {
+                break;
+            }
+            offset = next;
+        }
+        return offset;
+    }
+
+    /**
+     * Number of records in {@code [from, to)}, which must hold complete records only.
+     */
+    static int count(MemorySegment seg, long from, long to) {
+        int records = 0;
+        for (long offset = from; offset < to; offset = next(seg, offset)) {
+            records++;
+        }
+        return records;
+    }
+}
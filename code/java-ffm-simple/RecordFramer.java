@@ -0,0 +1,124 @@
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Turns a TCP byte stream back into whole records. Reads land after the bytes already
+ * buffered; when the complete records at the front are handed on, a record cut off at
+ * the end of a read is set aside and put at the front of the buffer the connection
+ * continues in, to be completed by the next read. One framer per connection.
+ */
+final class RecordFramer {
+
+    /**
+     * Where records end in a byte stream.
+     */
+    interface Framing {
+
+        /**
+         * End of the complete records at the front of {@code buffer}'s first
+         * {@code filled} bytes, 0 when there are none.
+         */
+        long completeEnd(MemorySegment buffer, long filled);
+
+        /**
+         * Number of records in the first {@code end} bytes, as returned by
+         * {@link #completeEnd}.
+         */
+        int count(MemorySegment buffer, long end);
+    }
+
+    /**
+     * No records at all: every read is handed on as it is, for byte streams.
+     */
+    static final Framing RAW = new Framing() {
+        @Override
+        public long completeEnd(MemorySegment buffer, long filled) {
+            return filled;
+        }
+
+        @Override
+        public int count(MemorySegment buffer, long end) {
+            return 0;
+        }
+    };
+
+    private final Framing framing;
+    private MemorySegment buffer;
+    private long filled;
+    private MemorySegment carry = MemorySegment.ofArray(new byte[256]); // cut-off record between buffers
+    private long carried;
+
+    RecordFramer(MemorySegment buffer, Framing framing) {
+        this.buffer = buffer;
+        this.framing = framing;
+    }
+
+    /**
+     * Current buffer, null between {@link #handOver} and {@link #continueIn}.
+     */
+    MemorySegment buffer() {
+        return buffer;
+    }
+
+    /**
+     * Bytes buffered and not yet consumed; the next read goes to this offset.
+     */
+    long filled() {
+        return filled;
+    }
+
+    /**
+     * Bytes of incomplete records held, buffered or set aside.
+     */
+    long pending() {
+        return filled + carried;
+    }
+
+    /**
+     * Space behind the buffered bytes for the next read.
+     */
+    MemorySegment free() {
+        return buffer.asSlice(filled);
+    }
+
+    /**
+     * Accounts {@code bytes} newly read behind {@link #filled()} and returns the end of
+     * the complete records at the front of the buffer, 0 when there are none yet.
+     */
+    long received(long bytes) {
+        filled += bytes;
+        long complete = framing.completeEnd(buffer, filled);
+        if (complete == 0 && filled == buffer.byteSize()) {
+            throw new IllegalStateException("Record larger than the " + buffer.byteSize() + " byte receive buffer");
+        }
+        return complete;
+    }
+
+    /**
+     * Gives up the buffer, whose first {@code end} bytes are complete records, after
+     * copying the incomplete rest out of it. The caller may then pass the buffer on,
+     * even to a thread that reuses it at once; {@link #continueIn} resumes framing.
+     */
+    MemorySegment handOver(long end) {
+        long rest = filled - end;
+        if (carry.byteSize() < rest) {
+            carry = MemorySegment.ofArray(new byte[(int) Math.max(rest, carry.byteSize() * 2)]);
+        }
+        MemorySegment.copy(buffer, end, carry, 0, rest);
+        carried = rest;
+        filled = 0;
+        MemorySegment handed = buffer;
+        buffer = null;
+        return handed;
+    }
+
+    /**
+     * Continues in {@code next}, which may be the buffer just handed over, with the
+     * bytes set aside by {@link #handOver} at its front.
+     */
+    void continueIn(MemorySegment next) {
+        MemorySegment.copy(carry, 0, next, 0, carried);
+        filled = carried;
+        carried = 0;
+        buffer = next;
+    }
+}
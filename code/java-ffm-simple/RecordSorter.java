@@ -0,0 +1,350 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Sorts binary records ({@link CsvBinaryEncoder#RECORD_LAYOUT} plus name) by
+ * {@code mobile} without decoding them into objects.
+ *
+ * {@link #index} builds an off-heap array of 16-byte (mobile, offset) entries and
+ * sorts it with a parallel LSD radix sort, 8 bits per pass: every worker counts the
+ * digits of its slice, the counts are turned into per-worker start positions, and
+ * every worker scatters its slice to them, which keeps the sort stable. Passes over a
+ * digit that all keys share are skipped, so 10-digit phone numbers take 5 passes
+ * instead of 8. {@link #sort} uses the index to copy the records out in order.
+ *
+ * {@link #sortCsv} handles inputs bigger than memory: it encodes and sorts the CSV in
+ * chunks that fit the memory budget, writes each as a sorted run to a temporary file
+ * and merges the runs into the output file.
+ */
+final class RecordSorter implements AutoCloseable {
+
+    static final long ENTRY_SIZE = 2 * Long.BYTES; // mobile, offset
+
+    private static final int RADIX_BITS = 8;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+    private static final int PASSES = Long.SIZE / RADIX_BITS;
+    private static final long MIN_PART_ENTRIES = 64 * 1024; // below this a worker costs more than it saves
+    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG;
+
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    RecordSorter(int parallelism) {
+        this.parallelism = parallelism;
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Returns the (mobile, offset) entries of the records in {@code records}, which must
+     * hold complete records only, sorted by mobile.
+     */
+    MemorySegment index(Arena arena, MemorySegment records) {
+        long count = RecordDecoder.count(records, 0, records.byteSize());
+        MemorySegment entries = NativeMemory.allocate(arena, count * ENTRY_SIZE);
+        long i = 0;
+        for (long offset = 0; offset < records.byteSize(); offset = RecordDecoder.next(records, offset)) {
+            entries.setAtIndex(LONG, 2 * i, RecordDecoder.mobile(records, offset));
+            entries.setAtIndex(LONG, 2 * i + 1, offset);
+            i++;
+        }
+        radixSort(entries, count);
+        return entries;
+    }
+
+    /**
+     * Writes the records of {@code records} to {@code out}, which must be as large,
+     * sorted by mobile; returns the number of records.
+     */
+    long sort(MemorySegment records, MemorySegment out) {
+        try (Arena arena = TrackedArena.ofShared("sort-index")) {
+            MemorySegment entries = index(arena, records);
+            long count = entries.byteSize() / ENTRY_SIZE;
+            int parts = parts(count);
+            long[] outStart = new long[parts + 1];
+
+            // Each worker copies one slice of the index; first find where its records go
+            forEachPart(parts, p -> {
+                long bytes = 0;
+                for (long i = partStart(count, parts, p); i < partStart(count, parts, p + 1); i++) {
+                    long offset = entries.getAtIndex(LONG, 2 * i + 1);
+                    bytes += RecordDecoder.next(records, offset) - offset;
+                }
+                outStart[p + 1] = bytes;
+            });
+            for (int p = 0; p < parts; p++) {
+                outStart[p + 1] += outStart[p];
+            }
+            forEachPart(parts, p -> {
+                long outOffset = outStart[p];
+                for (long i = partStart(count, parts, p); i < partStart(count, parts, p + 1); i++) {
+                    long offset = entries.getAtIndex(LONG, 2 * i + 1);
+                    long length = RecordDecoder.next(records, offset) - offset;
+                    MemorySegment.copy(records, offset, out, outOffset, length);
+                    outOffset += length;
+                }
+            });
+            return count;
+        }
+    }
+
+    /**
+     * Encodes the CSV at {@code csvPath}, sorts it by mobile and writes the binary
+     * records to {@code outPath}, holding about {@code memoryBytes} of encoded records,
+     * index and output at a time. Returns the number of records.
+     */
+    long sortCsv(Path csvPath, Path outPath, long memoryBytes) throws IOException {
+        // Encoded chunk, its sorted copy and two 16-byte entries per record of at least
+        // 14 bytes: about 4.5 times the chunk
+        long chunkBytes = Math.max(1024 * 1024, memoryBytes * 2 / 9);
+        List<Path> runs = new ArrayList<>();
+        long records = 0;
+        try (FileChannel inCh = FileChannel.open(csvPath, StandardOpenOption.READ);
+                Arena mapArena = Arena.ofShared()) {
+            MemorySegment csv = inCh.map(FileChannel.MapMode.READ_ONLY, 0, inCh.size(), mapArena);
+            long recordsStart = CsvBinaryEncoder.skipHeader(csv);
+            if (recordsStart < 0) {
+                System.out.println("No records after header");
+                Files.deleteIfExists(outPath);
+                Files.createFile(outPath);
+                return 0;
+            }
+            NativeMemory.adviseSequential(csv, chunkBytes);
+            long end = csv.byteSize();
+            for (long from = recordsStart, to; from < end; from = to) {
+                long limit = Math.min(from + chunkBytes, end);
+                to = limit == end ? end : CsvBinaryEncoder.endOfCompleteLines(csv, from, limit);
+                to = to > from ? to : end;
+                NativeMemory.willNeed(csv, to, chunkBytes);
+                boolean only = from == recordsStart && to == end;
+                Path run = only ? outPath : Files.createTempFile(outPath.toAbsolutePath().getParent(), "sort-run-", ".bin");
+                records += sortChunk(csv, from, to, run);
+                if (!only) {
+                    runs.add(run);
+                }
+            }
+        }
+        if (!runs.isEmpty()) {
+            System.out.println("Sorted " + runs.size() + " runs of up to " + chunkBytes + " CSV bytes, merging");
+            try {
+                merge(runs, outPath);
+            } finally {
+                for (Path run : runs) {
+                    Files.deleteIfExists(run);
+                }
+            }
+        }
+        return records;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    private long sortChunk(MemorySegment csv, long from, long to, Path runPath) throws IOException {
+        try (Arena arena = TrackedArena.ofShared("sort-chunk");
+                FileChannel runCh = FileChannel.open(runPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = CsvBinaryEncoder.encodedSize(csv, from, to);
+            MemorySegment encoded = NativeMemory.allocate(arena, size);
+            CsvBinaryEncoder.encode(csv, from, to, encoded, 0);
+            MemorySegment run = runCh.map(FileChannel.MapMode.READ_WRITE, 0, size, arena);
+            return sort(encoded, run);
+        }
+    }
+
+    /**
+     * K-way merge of sorted run files through a binary heap of run numbers ordered by
+     * each run's current mobile; ties go to the earlier run, so the merge is stable.
+     */
+    private static void merge(List<Path> runPaths, Path outPath) throws IOException {
+        int k = runPaths.size();
+        try (Arena arena = Arena.ofShared();
+                FileChannel outCh = FileChannel.open(outPath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MemorySegment[] runs = new MemorySegment[k];
+            long[] cursor = new long[k];
+            long total = 0;
+            for (int r = 0; r < k; r++) {
+                try (FileChannel ch = FileChannel.open(runPaths.get(r), StandardOpenOption.READ)) {
+                    runs[r] = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size(), arena);
+                }
+                NativeMemory.adviseSequential(runs[r], 1024 * 1024);
+                total += runs[r].byteSize();
+            }
+            MemorySegment out = outCh.map(FileChannel.MapMode.READ_WRITE, 0, total, arena);
+
+            int[] heap = new int[k];
+            int size = 0;
+            for (int r = 0; r < k; r++) {
+                if (runs[r].byteSize() > 0) {
+                    heap[size] = r;
+                    siftUp(heap, size++, runs, cursor);
+                }
+            }
+            long outOffset = 0;
+            while (size > 0) {
+                int r = heap[0];
+                long next = RecordDecoder.next(runs[r], cursor[r]);
+                MemorySegment.copy(runs[r], cursor[r], out, outOffset, next - cursor[r]);
+                outOffset += next - cursor[r];
+                cursor[r] = next;
+                if (next == runs[r].byteSize()) {
+                    heap[0] = heap[--size];
+                }
+                siftDown(heap, size, runs, cursor);
+            }
+        }
+    }
+
+    private static boolean before(int a, int b, MemorySegment[] runs, long[] cursor) {
+        long ma = RecordDecoder.mobile(runs[a], cursor[a]);
+        long mb = RecordDecoder.mobile(runs[b], cursor[b]);
+        return ma < mb || (ma == mb && a < b);
+    }
+
+    private static void siftUp(int[] heap, int i, MemorySegment[] runs, long[] cursor) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!before(heap[i], heap[parent], runs, cursor)) {
+                return;
+            }
+            int t = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = t;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, MemorySegment[] runs, long[] cursor) {
+        int i = 0;
+        while (true) {
+            int smallest = i;
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                if (before(heap[child], heap[smallest], runs, cursor)) {
+                    smallest = child;
+                }
+            }
+            if (smallest == i) {
+                return;
+            }
+            int t = heap[i];
+            heap[i] = heap[smallest];
+            heap[smallest] = t;
+            i = smallest;
+        }
+    }
+
+    private void radixSort(MemorySegment entries, long count) {
+        int parts = parts(count);
+
+        // Digit totals never change between passes, so one count up front tells which
+        // passes would leave every entry where it is
+        long[][] totals = new long[parts][PASSES * BUCKETS];
+        forEachPart(parts, p -> {
+            long[] counts = totals[p];
+            for (long i = partStart(count, parts, p); i < partStart(count, parts, p + 1); i++) {
+                long key = entries.getAtIndex(LONG, 2 * i) ^ Long.MIN_VALUE; // signed order as unsigned bytes
+                for (int pass = 0; pass < PASSES; pass++) {
+                    counts[pass * BUCKETS + (int) ((key >>> (pass * RADIX_BITS)) & (BUCKETS - 1))]++;
+                }
+            }
+        });
+
+        try (Arena arena = TrackedArena.ofShared("sort-scratch")) {
+            MemorySegment src = entries;
+            MemorySegment dst = NativeMemory.allocate(arena, entries.byteSize());
+            long[][] starts = new long[parts][BUCKETS];
+            for (int pass = 0; pass < PASSES; pass++) {
+                if (singleDigit(totals, pass, count)) {
+                    continue;
+                }
+                int shift = pass * RADIX_BITS;
+                MemorySegment from = src;
+                MemorySegment to = dst;
+
+                long[][] counts = new long[parts][BUCKETS];
+                forEachPart(parts, p -> {
+                    for (long i = partStart(count, parts, p); i < partStart(count, parts, p + 1); i++) {
+                        long key = from.getAtIndex(LONG, 2 * i) ^ Long.MIN_VALUE;
+                        counts[p][(int) ((key >>> shift) & (BUCKETS - 1))]++;
+                    }
+                });
+                // Bucket-major, part-minor start positions keep equal digits in input order
+                long position = 0;
+                for (int digit = 0; digit < BUCKETS; digit++) {
+                    for (int p = 0; p < parts; p++) {
+                        starts[p][digit] = position;
+                        position += counts[p][digit];
+                    }
+                }
+                forEachPart(parts, p -> {
+                    long[] next = starts[p];
+                    for (long i = partStart(count, parts, p); i < partStart(count, parts, p + 1); i++) {
+                        long mobile = from.getAtIndex(LONG, 2 * i);
+                        int digit = (int) (((mobile ^ Long.MIN_VALUE) >>> shift) & (BUCKETS - 1));
+                        long j = next[digit]++;
+                        to.setAtIndex(LONG, 2 * j, mobile);
+                        to.setAtIndex(LONG, 2 * j + 1, from.getAtIndex(LONG, 2 * i + 1));
+                    }
+                });
+                src = to;
+                dst = from;
+            }
+            if (src != entries) {
+                MemorySegment.copy(src, 0, entries, 0, entries.byteSize());
+            }
+        }
+    }
+
+    private static boolean singleDigit(long[][] totals, int pass, long count) {
+        for (int digit = 0; digit < BUCKETS; digit++) {
+            long n = 0;
+            for (long[] counts : totals) {
+                n += counts[pass * BUCKETS + digit];
+            }
+            if (n != 0) {
+                return n == count;
+            }
+        }
+        return true;
+    }
+
+    private int parts(long count) {
+        return (int) Math.max(1, Math.min(parallelism, count / MIN_PART_ENTRIES));
+    }
+
+    private static long partStart(long count, int parts, int p) {
+        return count * p / parts;
+    }
+
+    private void forEachPart(int parts, IntConsumer body) {
+        if (parts == 1) {
+            body.accept(0);
+            return;
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(parts);
+        for (int p = 0; p < parts; p++) {
+            int part = p;
+            tasks.add(ForkJoinTask.adapt(() -> body.accept(part)));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates a {@link RecordCodec} class per {@link FeedSchema} at runtime.
+ *
+ * The generated methods are straight-line per schema: every column is split, parsed
+ * and stored at a constant header offset with a constant {@code ValueLayout}, so there
+ * is no loop over columns and no switch on their types for the JIT to see through.
+ * The class is emitted as Java source, compiled in memory with {@code javax.tools} and
+ * defined as a hidden class next to this one, so it can be unloaded with its codec.
+ * Codecs are cached by {@link FeedSchema#signature()}; {@code -Dffm.codec.dump=<dir>}
+ * writes the generated sources there.
+ *
+ * The class-file API would skip the compiler, but it is a preview API in JDK 22, which
+ * these samples are built for without {@code --enable-preview}. Compiling takes a
+ * second or two per schema, once, and needs the {@code jdk.compiler} module and this
+ * class's classes on {@code java.class.path}.
+ */
+final class SchemaCodec {
+
+    private static final Map<String, RecordCodec> CODECS = new ConcurrentHashMap<>();
+    private static final AtomicInteger CLASS_IDS = new AtomicInteger();
+
+    private SchemaCodec() {
+    }
+
+    static RecordCodec forSchema(FeedSchema schema) {
+        return CODECS.computeIfAbsent(schema.signature(), signature -> generate(schema));
+    }
+
+    private static RecordCodec generate(FeedSchema schema) {
+        String className = "GeneratedCodec" + CLASS_IDS.incrementAndGet();
+        String source = source(schema, className);
+        String dump = System.getProperty("ffm.codec.dump");
+        try {
+            if (dump != null) {
+                Files.writeString(Path.of(dump, className + ".java"), source);
+            }
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(compile(className, source), true);
+            return (RecordCodec) lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, FeedSchema.class)).invoke(schema);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not generate a codec for " + schema.signature(), t);
+        }
+    }
+
+    /**
+     * Source of the codec class for {@code schema}.
+     */
+    static String source(FeedSchema schema, String className) {
+        List<FeedSchema.Column> columns = schema.columns();
+        long headerSize = schema.layout().byteSize();
+
+        StringBuilder split = new StringBuilder();
+        StringBuilder sizeSplit = new StringBuilder(); // only as far as the last string column
+        StringBuilder stringBytes = new StringBuilder();
+        StringBuilder store = new StringBuilder();
+        StringBuilder copy = new StringBuilder();
+        StringBuilder nextLength = new StringBuilder();
+        StringBuilder decode = new StringBuilder();
+        for (FeedSchema.Column c : columns) {
+            int i = c.index();
+            split.append(i == 0
+                    ? "                long s0 = lineStart;\n"
+                    : "                long s%d = Math.min(e%d + 1, lineEnd);\n".formatted(i, i - 1))
+                    .append("                long e%d = fieldEnd(csv, s%d, lineEnd);\n".formatted(i, i));
+            if (i > 0) {
+                decode.append("            out.set(BYTE, outOffset++, (byte) ',');\n");
+            }
+            switch (c.type()) {
+                case LONG -> {
+                    store.append("                out.set(LONG, outOffset + %d, parseLong(csv, s%d, e%d));\n"
+                            .formatted(c.offset(), i, i));
+                    decode.append("            outOffset = writeLong(out, outOffset, records.get(LONG, offset + %d));\n"
+                            .formatted(c.offset()));
+                }
+                case INT -> {
+                    store.append("                out.set(INT, outOffset + %d, (int) parseLong(csv, s%d, e%d));\n"
+                            .formatted(c.offset(), i, i));
+                    decode.append("            outOffset = writeLong(out, outOffset, records.get(INT, offset + %d));\n"
+                            .formatted(c.offset()));
+                }
+                case SHORT -> {
+                    store.append("                out.set(SHORT, outOffset + %d, (short) parseLong(csv, s%d, e%d));\n"
+                            .formatted(c.offset(), i, i));
+                    decode.append("            outOffset = writeLong(out, outOffset, records.get(SHORT, offset + %d));\n"
+                            .formatted(c.offset()));
+                }
+                case BYTE -> {
+                    store.append("                out.set(BYTE, outOffset + %d, (byte) parseLong(csv, s%d, e%d));\n"
+                            .formatted(c.offset(), i, i));
+                    decode.append("            outOffset = writeLong(out, outOffset, records.get(BYTE, offset + %d));\n"
+                            .formatted(c.offset()));
+                }
+                case BOOLEAN -> {
+                    store.append("                out.set(BOOLEAN, outOffset + %d, CsvBinaryEncoder.parseBoolean(csv, s%d, e%d));\n"
+                            .formatted(c.offset(), i, i));
+                    decode.append("            out.set(BYTE, outOffset++, records.get(BOOLEAN, offset + %d) ? (byte) '1' : (byte) '0');\n"
+                            .formatted(c.offset()));
+                }
+                case STRING -> {
+                    stringBytes.append(" + (e%d - s%d)".formatted(i, i));
+                    sizeSplit.setLength(0);
+                    sizeSplit.append(split);
+                    store.append("                out.set(SHORT, outOffset + %d, stringLength(e%d - s%d));\n"
+                            .formatted(c.offset(), i, i));
+                    copy.append("                MemorySegment.copy(csv, s%d, out, p, e%d - s%d);\n".formatted(i, i, i))
+                            .append("                p += e%d - s%d;\n".formatted(i, i));
+                    nextLength.append(" + Short.toUnsignedLong(records.get(SHORT, offset + %d))".formatted(c.offset()));
+                    decode.append("            long n%d = Short.toUnsignedLong(records.get(SHORT, offset + %d));\n"
+                            .formatted(i, c.offset()))
+                            .append("            MemorySegment.copy(records, p, out, outOffset, n%d);\n".formatted(i))
+                            .append("            outOffset += n%d;\n".formatted(i))
+                            .append("            p += n%d;\n".formatted(i));
+                }
+            }
+        }
+
+        return """
+                import java.lang.foreign.MemorySegment;
+                import java.lang.foreign.ValueLayout;
+                import java.nio.ByteOrder;
+
+                // Generated by SchemaCodec for %1$s
+                final class %2$s implements RecordCodec {
+
+                    private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+                    private static final ValueLayout.OfBoolean BOOLEAN = ValueLayout.JAVA_BOOLEAN;
+                    private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+                    private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+                    private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+                    private static final long HEADER = %3$d;
+
+                    private final FeedSchema schema;
+
+                    %2$s(FeedSchema schema) {
+                        this.schema = schema;
+                    }
+
+                    @Override
+                    public FeedSchema schema() {
+                        return schema;
+                    }
+
+                    @Override
+                    public long encodedSize(MemorySegment csv, long from, long to) {
+                        long size = 0;
+                        long lineStart = from;
+                        while (lineStart < to) {
+                            long nl = indexOf(csv, (byte) '\\n', lineStart, to);
+                            long lineEnd = trimCarriageReturn(csv, lineStart, nl < 0 ? to : nl);
+                            if (lineEnd > lineStart) {
+                %10$s                size += HEADER%5$s;
+                            }
+                            lineStart = nl < 0 ? to : nl + 1;
+                        }
+                        return size;
+                    }
+
+                    @Override
+                    public long encode(MemorySegment csv, long from, long to, MemorySegment out, long outOffset) {
+                        long records = 0;
+                        long lineStart = from;
+                        while (lineStart < to) {
+                            long nl = indexOf(csv, (byte) '\\n', lineStart, to);
+                            long lineEnd = trimCarriageReturn(csv, lineStart, nl < 0 ? to : nl);
+                            if (lineEnd > lineStart) {
+                %4$s%6$s                long p = outOffset + HEADER;
+                %7$s                outOffset = p;
+                                records++;
+                            }
+                            lineStart = nl < 0 ? to : nl + 1;
+                        }
+                        return records;
+                    }
+
+                    @Override
+                    public long next(MemorySegment records, long offset) {
+                        return offset + HEADER%8$s;
+                    }
+
+                    @Override
+                    public long decode(MemorySegment records, long from, long to, MemorySegment out, long outOffset) {
+                        long offset = from;
+                        while (offset < to) {
+                            long p = offset + HEADER;
+                %9$s            out.set(BYTE, outOffset++, (byte) '\\n');
+                            offset = p;
+                        }
+                        return outOffset;
+                    }
+
+                    private static long parseLong(MemorySegment csv, long start, long end) {
+                        boolean negative = start < end && csv.get(BYTE, start) == '-';
+                        long value = 0;
+                        for (long i = negative ? start + 1 : start; i < end; i++) {
+                            value = value * 10 + (csv.get(BYTE, i) - '0');
+                        }
+                        return negative ? -value : value;
+                    }
+
+                    private static short stringLength(long length) {
+                        if (length > 0xFFFF) {
+                            throw new IllegalArgumentException("String field of " + length + " bytes, at most 65535 fit");
+                        }
+                        return (short) length;
+                    }
+
+                    // Digits of value, computed on its negative so that Long.MIN_VALUE works too
+                    private static long writeLong(MemorySegment out, long pos, long value) {
+                        if (value < 0) {
+                            out.set(BYTE, pos++, (byte) '-');
+                        } else {
+                            value = -value;
+                        }
+                        int digits = 1;
+                        for (long v = value; v <= -10; v /= 10) {
+                            digits++;
+                        }
+                        for (long i = pos + digits - 1; i >= pos; i--) {
+                            out.set(BYTE, i, (byte) ('0' - value %% 10));
+                            value /= 10;
+                        }
+                        return pos + digits;
+                    }
+
+                    private static long trimCarriageReturn(MemorySegment csv, long start, long end) {
+                        return end > start && csv.get(BYTE, end - 1) == '\\r' ? end - 1 : end;
+                    }
+
+                    private static long fieldEnd(MemorySegment csv, long start, long end) {
+                        long comma = indexOf(csv, (byte) ',', start, end);
+                        return comma < 0 ? end : comma;
+                    }
+
+                    private static long indexOf(MemorySegment seg, byte b, long from, long to) {
+                        for (long i = from; i < to; i++) {
+                            if (seg.get(BYTE, i) == b) {
+                                return i;
+                            }
+                        }
+                        return -1;
+                    }
+                }
+                """.formatted(schema.signature(), className, headerSize, split, stringBytes, store, copy,
+                nextLength, decode, sizeSplit);
+    }
+
+    private static byte[] compile(String className, String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Generating codecs needs a JDK with the jdk.compiler module");
+        }
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        JavaFileObject input = new SimpleJavaFileObject(URI.create("string:///" + className + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        StringWriter diagnostics = new StringWriter();
+        try (StandardJavaFileManager standard = compiler.getStandardFileManager(null, null, null);
+                JavaFileManager files = new ForwardingJavaFileManager<>(standard) {
+                    @Override
+                    public JavaFileObject getJavaFileForOutput(Location location, String name, JavaFileObject.Kind kind,
+                            FileObject sibling) {
+                        return new SimpleJavaFileObject(URI.create("bytes:///" + name + ".class"), kind) {
+                            @Override
+                            public OutputStream openOutputStream() {
+                                return classBytes;
+                            }
+                        };
+                    }
+                }) {
+            List<String> options = List.of("--release", String.valueOf(Runtime.version().feature()), "-proc:none",
+                    "-classpath", System.getProperty("java.class.path"));
+            if (!compiler.getTask(diagnostics, files, null, options, null, List.of(input)).call()) {
+                throw new IllegalStateException("Generated codec does not compile:\n" + diagnostics + "\n" + source);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return classBytes.toByteArray();
+    }
+}
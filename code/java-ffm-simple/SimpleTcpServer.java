@@ -1,24 +1,25 @@
-import java.io.InputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-
 public class SimpleTcpServer {
     public static void main(String[] args) throws Exception {
         int port = 12345;
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.println("TCP Server listening on port " + port);
-            while (true) {
-                try (Socket clientSocket = serverSocket.accept();
-                        InputStream in = clientSocket.getInputStream()) {
-                    System.out.println("Client connected: " + clientSocket.getInetAddress());
-                    byte[] buffer = new byte[4096];
-                    int bytesRead;
-                    while ((bytesRead = in.read(buffer)) != -1) {
-                        System.out.println("Received " + bytesRead + " bytes");
-                    }
-                    System.out.println("Client disconnected.");
-                }
+        System.out.println("TCP Server listening on port " + port);
+        // Plain bytes on the shared receive loop: every read is one batch
+        BatchHandler handler = new BatchHandler() {
+            @Override
+            public void onConnect(Connection connection) {
+                System.out.println("Client connected: " + connection.remote());
+            }
+
+            @Override
+            public boolean onBatch(RecordBatch batch) {
+                System.out.println("Received " + batch.segment().byteSize() + " bytes");
+                return true;
+            }
+
+            @Override
+            public void onDisconnect(Connection connection) {
+                System.out.println("Client disconnected.");
             }
-        }
+        };
+        new ReceiverEngine(new NioTransport(), handler, RecordFramer.RAW, port, 1, 16, 64 * 1024).run();
     }
 }
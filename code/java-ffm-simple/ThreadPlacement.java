@@ -0,0 +1,173 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pins threads to cores and keeps their memory on the local NUMA node, via libc
+ * {@code sched_setaffinity}/{@code getcpu} and the {@code set_mempolicy}/{@code mbind}
+ * system calls (glibc has no wrappers for the latter two).
+ *
+ * Core lists come from system properties in {@code taskset} syntax, e.g.
+ * {@code -Dffm.cpus.ring=2,3 -Dffm.cpus.encoder=4-11}. Unset properties leave the
+ * thread to the scheduler. A pinned thread also gets {@code MPOL_LOCAL}, so pages it
+ * touches first are placed on its own node; {@link #bindToLocalNode} moves a buffer
+ * that was already touched elsewhere, or that the kernel fills from io_uring workers
+ * running on other cores.
+ */
+final class ThreadPlacement {
+
+    static final String RING_CPUS = "ffm.cpus.ring";
+    static final String ENCODER_CPUS = "ffm.cpus.encoder";
+
+    private static final int CPU_SET_BYTES = 128; // glibc cpu_set_t, 1024 CPUs
+    private static final int MPOL_BIND = 2;
+    private static final int MPOL_LOCAL = 4;
+    private static final int MPOL_MF_MOVE = 1 << 1;
+
+    // x86_64 and aarch64 syscall numbers; 0 where unknown
+    private static final long SYS_MBIND;
+    private static final long SYS_SET_MEMPOLICY;
+
+    private static final MethodHandle MH_SCHED_SETAFFINITY;
+    private static final MethodHandle MH_GETCPU;
+    private static final MethodHandle MH_SYSCALL_MBIND;
+    private static final MethodHandle MH_SYSCALL_SET_MEMPOLICY;
+    private static final long PAGE_SIZE = 4096;
+
+    static {
+        switch (System.getProperty("os.arch")) {
+            case "amd64", "x86_64" -> {
+                SYS_MBIND = 237;
+                SYS_SET_MEMPOLICY = 238;
+            }
+            case "aarch64" -> {
+                SYS_MBIND = 235;
+                SYS_SET_MEMPOLICY = 237;
+            }
+            default -> {
+                SYS_MBIND = 0;
+                SYS_SET_MEMPOLICY = 0;
+            }
+        }
+        Linker linker = Linker.nativeLinker();
+        SymbolLookup libc = linker.defaultLookup();
+        MH_SCHED_SETAFFINITY = linker.downcallHandle(libc.find("sched_setaffinity").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG,
+                        ValueLayout.ADDRESS));
+        MH_GETCPU = linker.downcallHandle(libc.find("getcpu").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+        // long syscall(long number, ...): every argument is passed as a full register
+        MemorySegment syscall = libc.find("syscall").orElseThrow();
+        MH_SYSCALL_MBIND = linker.downcallHandle(syscall,
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG,
+                        ValueLayout.JAVA_LONG),
+                Linker.Option.firstVariadicArg(1));
+        MH_SYSCALL_SET_MEMPOLICY = linker.downcallHandle(syscall,
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG,
+                        ValueLayout.ADDRESS, ValueLayout.JAVA_LONG),
+                Linker.Option.firstVariadicArg(1));
+    }
+
+    private ThreadPlacement() {
+    }
+
+    /**
+     * Pins the calling thread to entry {@code index} (modulo the list length) of the core
+     * list in {@code property}. Returns the core, or -1 when the property is not set.
+     */
+    static int pinFromProperty(String property, int index) {
+        String spec = System.getProperty(property);
+        if (spec == null || spec.isBlank()) {
+            return -1;
+        }
+        int[] cpus = parseCpuList(spec);
+        int cpu = cpus[Math.floorMod(index, cpus.length)];
+        pin(cpu);
+        System.out.println(Thread.currentThread().getName() + " pinned to cpu " + cpu + " (node "
+                + currentNode() + ")");
+        return cpu;
+    }
+
+    /**
+     * Restricts the calling OS thread to {@code cpu} and makes its future page
+     * allocations node-local. Must be called from a platform thread.
+     */
+    static void pin(int cpu) {
+        int ret;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment mask = arena.allocate(CPU_SET_BYTES);
+            mask.set(ValueLayout.JAVA_LONG, (cpu / 64) * 8L, 1L << (cpu % 64));
+            ret = (int) MH_SCHED_SETAFFINITY.invokeExact(0, (long) CPU_SET_BYTES, mask);
+            if (ret == 0 && SYS_SET_MEMPOLICY != 0) {
+                long ignored = (long) MH_SYSCALL_SET_MEMPOLICY.invokeExact(SYS_SET_MEMPOLICY, (long) MPOL_LOCAL,
+                        MemorySegment.NULL, 0L);
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not pin thread to cpu " + cpu, t);
+        }
+        if (ret != 0) {
+            throw new IllegalStateException("sched_setaffinity to cpu " + cpu + " failed (no such cpu or not allowed)");
+        }
+    }
+
+    /**
+     * NUMA node of the core the calling thread runs on.
+     */
+    static int currentNode() {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment cpu = arena.allocate(ValueLayout.JAVA_INT);
+            MemorySegment node = arena.allocate(ValueLayout.JAVA_INT);
+            int ret = (int) MH_GETCPU.invokeExact(cpu, node);
+            return ret == 0 ? node.get(ValueLayout.JAVA_INT, 0) : 0;
+        } catch (Throwable t) {
+            throw new IllegalStateException("getcpu failed", t);
+        }
+    }
+
+    /**
+     * Binds the pages of {@code segment} to the calling thread's node and migrates pages
+     * that already live elsewhere. Returns false when the kernel refused (e.g. no NUMA
+     * support); the memory is still usable then.
+     */
+    static boolean bindToLocalNode(MemorySegment segment) {
+        if (SYS_MBIND == 0 || segment.byteSize() == 0) {
+            return false;
+        }
+        int node = currentNode();
+        long start = segment.address() & -PAGE_SIZE;
+        long length = segment.address() + segment.byteSize() - start;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment nodeMask = arena.allocate(16); // two longs, more than any node id we see
+            nodeMask.set(ValueLayout.JAVA_LONG, (node / 64) * 8L, 1L << (node % 64));
+            long ret = (long) MH_SYSCALL_MBIND.invokeExact(SYS_MBIND, start, length, (long) MPOL_BIND, nodeMask,
+                    129L, (long) MPOL_MF_MOVE);
+            return ret == 0;
+        } catch (Throwable t) {
+            throw new IllegalStateException("mbind failed", t);
+        }
+    }
+
+    /**
+     * Parses {@code taskset -c} style lists such as {@code 0-3,8,10-11}.
+     */
+    static int[] parseCpuList(String spec) {
+        List<Integer> cpus = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String range = part.trim();
+            int dash = range.indexOf('-');
+            int from = Integer.parseInt(dash < 0 ? range : range.substring(0, dash));
+            int to = dash < 0 ? from : Integer.parseInt(range.substring(dash + 1));
+            for (int cpu = from; cpu <= to; cpu++) {
+                cpus.add(cpu);
+            }
+        }
+        return cpus.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,96 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Arena} that reports every allocation to the {@link AllocationRegistry}.
+ *
+ * Allocation is delegated to a plain shared or confined arena; on top of that the
+ * first caller frame outside the FFM API is recorded as the call site, and all bytes
+ * are released in the registry when the arena is closed. Capturing the call site
+ * walks a few stack frames, which is fine for per-buffer or per-batch allocations
+ * but not for per-record ones.
+ */
+public final class TrackedArena implements Arena {
+
+    private static final StackWalker WALKER = StackWalker.getInstance();
+
+    private final Arena delegate;
+    private final String name;
+    private final String openedAt;
+    private final Map<String, AtomicLong> bytesByCallSite = new ConcurrentHashMap<>();
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    private TrackedArena(Arena delegate, String name) {
+        this.delegate = delegate;
+        this.name = name;
+        this.openedAt = callSite();
+        AllocationRegistry.opened(this);
+    }
+
+    public static TrackedArena ofShared(String name) {
+        return new TrackedArena(Arena.ofShared(), name);
+    }
+
+    public static TrackedArena ofConfined(String name) {
+        return new TrackedArena(Arena.ofConfined(), name);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String openedAt() {
+        return openedAt;
+    }
+
+    public long liveBytes() {
+        return liveBytes.get();
+    }
+
+    @Override
+    public MemorySegment allocate(long byteSize, long byteAlignment) {
+        MemorySegment segment = delegate.allocate(byteSize, byteAlignment);
+        record(byteSize);
+        return segment;
+    }
+
+    /**
+     * Accounts memory that is bound to this arena but was not allocated through it,
+     * e.g. an mmap'd region that {@link NativeMemory} releases when the arena closes.
+     */
+    void record(long byteSize) {
+        String site = callSite();
+        bytesByCallSite.computeIfAbsent(site, k -> new AtomicLong()).addAndGet(byteSize);
+        liveBytes.addAndGet(byteSize);
+        AllocationRegistry.allocated(site, byteSize);
+    }
+
+    @Override
+    public MemorySegment.Scope scope() {
+        return delegate.scope();
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+        Map<String, Long> released = new HashMap<>();
+        bytesByCallSite.forEach((site, bytes) -> released.put(site, bytes.get()));
+        liveBytes.set(0);
+        AllocationRegistry.closed(this, released);
+    }
+
+    private static String callSite() {
+        return WALKER.walk(frames -> frames
+                .filter(f -> !f.getClassName().equals(TrackedArena.class.getName())
+                        && !f.getClassName().equals(NativeMemory.class.getName())
+                        && !f.getClassName().startsWith("java.lang.foreign.")
+                        && !f.getClassName().startsWith("jdk.internal.foreign."))
+                .findFirst()
+                .map(f -> f.getClassName() + "." + f.getMethodName() + ":" + f.getLineNumber())
+                .orElse("unknown"));
+    }
+}
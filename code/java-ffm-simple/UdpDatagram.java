@@ -0,0 +1,64 @@
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Wire format of the UDP transport: a {@link #HEADER} followed by {@code length}
+ * bytes of whole binary records, never a record split over two datagrams, so every
+ * datagram can be processed on its own and a lost one costs only its own records.
+ *
+ * {@code sequence} counts the datagrams of one sender run from 0 and {@code epoch}
+ * tells runs apart, so the receiver can tell a gap from a restarted sender. Datagrams
+ * sent with GSO are padded to the segment size behind {@code length}.
+ */
+final class UdpDatagram {
+
+    static final int DEFAULT_SEGMENT = 1472; // 1500 byte Ethernet MTU minus IPv4 and UDP headers
+
+    static final StructLayout HEADER = MemoryLayout.structLayout(
+            ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN).withName("sequence"),
+            ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN).withName("epoch"),
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN).withName("length"),
+            ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN).withName("records"))
+            .withName("datagram_header");
+
+    static final long HEADER_SIZE = HEADER.byteSize();
+
+    private static final VarHandle VH_SEQUENCE = HEADER.varHandle(PathElement.groupElement("sequence"));
+    private static final VarHandle VH_EPOCH = HEADER.varHandle(PathElement.groupElement("epoch"));
+    private static final VarHandle VH_LENGTH = HEADER.varHandle(PathElement.groupElement("length"));
+    private static final VarHandle VH_RECORDS = HEADER.varHandle(PathElement.groupElement("records"));
+
+    private UdpDatagram() {
+    }
+
+    static void writeHeader(MemorySegment seg, long offset, long sequence, int epoch, int length, int records) {
+        VH_SEQUENCE.set(seg, offset, sequence);
+        VH_EPOCH.set(seg, offset, epoch);
+        VH_LENGTH.set(seg, offset, (short) length);
+        VH_RECORDS.set(seg, offset, (short) records);
+    }
+
+    static long sequence(MemorySegment seg, long offset) {
+        return (long) VH_SEQUENCE.get(seg, offset);
+    }
+
+    static int epoch(MemorySegment seg, long offset) {
+        return (int) VH_EPOCH.get(seg, offset);
+    }
+
+    /**
+     * Record bytes behind the header.
+     */
+    static int length(MemorySegment seg, long offset) {
+        return Short.toUnsignedInt((short) VH_LENGTH.get(seg, offset));
+    }
+
+    static int records(MemorySegment seg, long offset) {
+        return Short.toUnsignedInt((short) VH_RECORDS.get(seg, offset));
+    }
+}
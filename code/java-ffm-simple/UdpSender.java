@@ -0,0 +1,126 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends binary records as {@link UdpDatagram}s: packs as many whole records as fit
+ * into each datagram of {@code segment} bytes and hands a burst of them to the kernel
+ * in one {@code sendmmsg}. With GSO every 64 datagrams of a burst travel through the
+ * stack as one message and are split by the kernel or the NIC, so the per-packet cost
+ * is paid once per message.
+ *
+ * UDP has no flow control: a sender faster than its receiver loses datagrams, which
+ * the receiver reports as gaps. {@code datagramsPerSecond} paces the bursts; 0 sends
+ * as fast as the socket buffer drains.
+ */
+final class UdpSender {
+
+    static final int BURST = 256; // datagrams per udp_send_batch call
+    private static final int ECONNREFUSED = 111; // ICMP port unreachable reported on a connected socket
+    private static final int SNDBUF = 4 * 1024 * 1024;
+
+    private final int segment;
+    private final boolean gso;
+    private final long datagramsPerSecond;
+    private final MethodHandle mhOpen;
+    private final MethodHandle mhSendBatch;
+    private final MethodHandle mhClose;
+
+    UdpSender(SymbolLookup lib, int segment, boolean gso, long datagramsPerSecond) {
+        this.segment = segment;
+        this.gso = gso;
+        this.datagramsPerSecond = datagramsPerSecond;
+        Linker linker = Linker.nativeLinker();
+        mhOpen = linker.downcallHandle(lib.find("udp_open_sender").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                        ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        mhSendBatch = linker.downcallHandle(lib.find("udp_send_batch").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+        mhClose = linker.downcallHandle(lib.find("io_uring_close").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+    }
+
+    /**
+     * Sends {@code records}, which must hold complete records only, to {@code ip:port}.
+     */
+    void send(String ip, int port, MemorySegment records) throws Throwable {
+        try (Arena arena = Arena.ofConfined()) {
+            int fd = (int) mhOpen.invokeExact(arena.allocateFrom(ip), port, gso ? segment : 0, SNDBUF);
+            if (fd < 0) {
+                throw new IllegalStateException("udp_open_sender failed: " + fd + (gso ? " (no UDP GSO?)" : ""));
+            }
+            MemorySegment burst = arena.allocate((long) segment * BURST, 64);
+            MemorySegment lengths = arena.allocate(ValueLayout.JAVA_INT, BURST);
+            int epoch = (int) (System.currentTimeMillis() / 1000);
+            long payload = segment - UdpDatagram.HEADER_SIZE;
+            long sequence = 0;
+            long offset = 0;
+            long refused = 0;
+            long start = System.nanoTime();
+
+            try {
+                while (offset < records.byteSize()) {
+                    int count = 0;
+                    while (count < BURST && offset < records.byteSize()) {
+                        long end = offset;
+                        int n = 0;
+                        for (long next; end < records.byteSize()
+                                && (next = RecordDecoder.next(records, end)) - offset <= payload; end = next) {
+                            n++;
+                        }
+                        if (n == 0) {
+                            throw new IllegalStateException("Record at " + offset + " does not fit a " + segment
+                                    + " byte datagram");
+                        }
+                        long slot = (long) count * segment;
+                        UdpDatagram.writeHeader(burst, slot, sequence++, epoch, (int) (end - offset), n);
+                        MemorySegment.copy(records, offset, burst, slot + UdpDatagram.HEADER_SIZE, end - offset);
+                        long length = UdpDatagram.HEADER_SIZE + end - offset;
+                        if (gso) { // GSO splits at fixed offsets, so all but the last datagram must be full
+                            burst.asSlice(slot + length, segment - length).fill((byte) 0);
+                            length = segment;
+                        }
+                        lengths.setAtIndex(ValueLayout.JAVA_INT, count++, (int) length);
+                        offset = end;
+                    }
+
+                    // A burst cut short by an error returns how many went out; the rest is sent
+                    // again, so only an error that persists ends the run or loses datagrams
+                    for (int done = 0; done < count;) {
+                        int sent = (int) mhSendBatch.invokeExact(fd, burst.asSlice((long) done * segment), segment,
+                                count - done, lengths.asSlice((long) done * Integer.BYTES), gso ? 1 : 0);
+                        if (sent == -ECONNREFUSED) {
+                            refused += count - done; // nobody listening yet; the datagrams are lost like any other
+                            break;
+                        } else if (sent < 0) {
+                            throw new IllegalStateException("udp_send_batch failed after " + (sequence - count + done)
+                                    + " datagrams: " + sent);
+                        }
+                        done += sent;
+                    }
+                    if (datagramsPerSecond > 0) {
+                        long due = start + sequence * 1_000_000_000L / datagramsPerSecond;
+                        for (long wait; (wait = due - System.nanoTime()) > 0;) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                }
+            } finally {
+                mhClose.invokeExact(fd);
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Sent %d bytes of records in %d datagrams of %d bytes%s in %.2f s (%.0f datagrams/s)%n",
+                    records.byteSize(), sequence, segment, gso ? " with GSO" : "", seconds, sequence / seconds);
+            if (refused > 0) {
+                System.out.println(refused + " datagrams were refused, no receiver was listening");
+            }
+        }
+    }
+}
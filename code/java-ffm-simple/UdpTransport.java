@@ -0,0 +1,252 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * UDP transport for loss-tolerant fan-in: every I/O thread binds its own
+ * {@code SO_REUSEPORT} socket and takes up to 64 messages per {@code recvmmsg}; with
+ * GRO each message may hold a run of datagrams from one sender that the kernel
+ * coalesced, which is split here at the segment size it reports.
+ *
+ * Each sender address is a flow with its own {@link ReceiverEngine.Session}. Gap
+ * detection is per flow on the {@link UdpDatagram} sequence: a jump counts the
+ * skipped datagrams as lost, an older sequence is late and dropped so records never
+ * go backwards, and a new epoch restarts the flow. Datagrams lost at the very end of
+ * a run show up only against the count the sender prints.
+ *
+ * The record bytes of a burst are gathered per flow into the session's buffer and
+ * handed on with one {@link ReceiverEngine.Session#received} per flow and burst, not
+ * per datagram. A flow that sends nothing for {@value #FLOW_IDLE_SECONDS} seconds is
+ * closed and forgotten, which gives its buffer back; if the sender comes back it starts
+ * over as a new flow. Totals are printed and idle flows swept once per second, also
+ * after traffic stops, since a receive returns empty after a second.
+ */
+final class UdpTransport implements ReceiverEngine.Transport {
+
+    static final StructLayout DATAGRAM_INFO = MemoryLayout.structLayout(
+            ValueLayout.JAVA_INT.withName("length"),
+            ValueLayout.JAVA_INT.withName("segment"),
+            ValueLayout.JAVA_INT.withName("addr"),
+            ValueLayout.JAVA_INT.withName("port")).withName("datagram_info");
+
+    private static final VarHandle VH_LENGTH = DATAGRAM_INFO.varHandle(PathElement.groupElement("length"));
+    private static final VarHandle VH_SEGMENT = DATAGRAM_INFO.varHandle(PathElement.groupElement("segment"));
+    private static final VarHandle VH_ADDR = DATAGRAM_INFO.varHandle(PathElement.groupElement("addr"));
+    private static final VarHandle VH_PORT = DATAGRAM_INFO.varHandle(PathElement.groupElement("port"));
+
+    private static final int BURST = 64; // messages per udp_recv_batch, the shim's limit
+    private static final int SLOT = 64 * 1024; // fits a GRO run, which stays below 64 KB
+    private static final int RCVBUF = 16 * 1024 * 1024;
+    static final int FLOW_IDLE_SECONDS = 10;
+
+    private final boolean gro;
+    private final MethodHandle mhOpen;
+    private final MethodHandle mhRecvBatch;
+    private final MethodHandle mhClose;
+
+    UdpTransport(SymbolLookup lib, boolean gro) {
+        this.gro = gro;
+        Linker linker = Linker.nativeLinker();
+        mhOpen = linker.downcallHandle(lib.find("udp_open_receiver").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT,
+                        ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        mhRecvBatch = linker.downcallHandle(lib.find("udp_recv_batch").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
+        mhClose = linker.downcallHandle(lib.find("io_uring_close").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+    }
+
+    @Override
+    public String name() {
+        return "udp";
+    }
+
+    @Override
+    public void serve(ReceiverEngine engine, int index, int threads) throws Throwable {
+        int fd = (int) mhOpen.invokeExact(engine.port(), gro ? 1 : 0, RCVBUF, threads > 1 ? 1 : 0);
+        if (fd < 0) {
+            throw new IllegalStateException("udp_open_receiver failed: " + fd + (gro ? " (no UDP GRO?)" : ""));
+        }
+        Map<Long, Flow> flows = new HashMap<>();
+        List<Flow> touched = new ArrayList<>();
+        Stats stats = new Stats();
+        long lastSweep = System.nanoTime();
+
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment buffer = arena.allocate((long) SLOT * BURST, 64);
+            MemorySegment info = arena.allocate(DATAGRAM_INFO, BURST);
+            while (true) {
+                int n = (int) mhRecvBatch.invokeExact(fd, buffer, SLOT, BURST, info);
+                if (n < 0) {
+                    throw new IllegalStateException("udp_recv_batch failed: " + n);
+                }
+                Flow flow = null;
+                for (int i = 0; i < n; i++) {
+                    long at = i * DATAGRAM_INFO.byteSize();
+                    int length = (int) VH_LENGTH.get(info, at);
+                    int segment = (int) VH_SEGMENT.get(info, at);
+                    long key = Integer.toUnsignedLong((int) VH_ADDR.get(info, at)) << 16 | (int) VH_PORT.get(info, at);
+                    if (flow == null || flow.key != key) {
+                        flow = flows.computeIfAbsent(key, k -> new Flow(k, engine, index));
+                    }
+                    if (!flow.touched) {
+                        flow.touched = true;
+                        touched.add(flow);
+                    }
+                    long slot = (long) i * SLOT;
+                    for (int off = 0; off < length; off += Math.max(segment, 1)) {
+                        flow.onDatagram(buffer, slot + off, Math.min(segment, length - off), stats);
+                    }
+                }
+                long now = System.nanoTime();
+                for (Flow f : touched) {
+                    f.flush();
+                    f.touched = false;
+                    f.lastSeen = now;
+                }
+                touched.clear();
+                if (now - lastSweep >= 1_000_000_000L) {
+                    lastSweep = now;
+                    Iterator<Flow> it = flows.values().iterator();
+                    while (it.hasNext()) {
+                        Flow f = it.next();
+                        if (now - f.lastSeen > FLOW_IDLE_SECONDS * 1_000_000_000L) {
+                            f.close(); // everything was flushed with its last burst
+                            it.remove();
+                        }
+                    }
+                }
+                stats.report(index, flows.size());
+            }
+        } finally {
+            mhClose.invokeExact(fd);
+            for (Flow f : flows.values()) {
+                f.close();
+            }
+        }
+    }
+
+    /**
+     * Datagrams from one sender address.
+     */
+    private static final class Flow {
+        final long key;
+        final ReceiverEngine engine;
+        final int thread; // I/O thread whose buffers the session uses
+        ReceiverEngine.Session session;
+        boolean started;
+        int epoch;
+        long expected; // next sequence
+        long pending; // record bytes copied into the session since the last flush
+        boolean touched; // in this burst
+        long lastSeen = System.nanoTime(); // end of the last burst with its datagrams
+
+        Flow(long key, ReceiverEngine engine, int thread) {
+            this.key = key;
+            this.engine = engine;
+            this.thread = thread;
+        }
+
+        void onDatagram(MemorySegment buffer, long offset, int length, Stats stats) throws InterruptedException {
+            stats.datagrams++;
+            if (length < UdpDatagram.HEADER_SIZE
+                    || UdpDatagram.HEADER_SIZE + UdpDatagram.length(buffer, offset) > length) {
+                stats.malformed++;
+                return;
+            }
+            long sequence = UdpDatagram.sequence(buffer, offset);
+            int datagramEpoch = UdpDatagram.epoch(buffer, offset);
+            if (!started || datagramEpoch != epoch) {
+                started = true; // joined or restarted mid-stream: nothing before counts as lost
+                epoch = datagramEpoch;
+            } else if (sequence < expected) {
+                stats.late++;
+                return;
+            } else if (sequence > expected) {
+                stats.lost += sequence - expected;
+            }
+            expected = sequence + 1;
+
+            int records = UdpDatagram.length(buffer, offset);
+            if (!writable(records)) {
+                stats.noBuffer++; // every buffer is leased; try again with the next datagram
+                return;
+            }
+            MemorySegment.copy(buffer, offset + UdpDatagram.HEADER_SIZE, session.free(), pending, records);
+            pending += records;
+        }
+
+        // Whether the session has room for {@code records} more bytes, flushing the
+        // pending ones first if not; false while no buffer is free
+        private boolean writable(int records) throws InterruptedException {
+            if (session == null) {
+                return (session = engine.tryOpen(thread, remote())) != null;
+            }
+            if (pending > 0 && pending + records > session.free().byteSize()) {
+                flush();
+            }
+            return session.resume();
+        }
+
+        // Datagrams hold whole records, so everything pending is consumed at once
+        void flush() throws InterruptedException {
+            if (pending > 0) {
+                session.received((int) pending);
+                pending = 0;
+            }
+        }
+
+        void close() {
+            if (session != null) {
+                session.close();
+            }
+        }
+
+        String remote() {
+            long addr = key >>> 16;
+            return (addr & 0xFF) + "." + (addr >>> 8 & 0xFF) + "." + (addr >>> 16 & 0xFF) + "." + (addr >>> 24 & 0xFF)
+                    + ":" + (key & 0xFFFF);
+        }
+    }
+
+    private static final class Stats {
+        long datagrams;
+        long lost;
+        long late;
+        long malformed;
+        long noBuffer;
+        private long lastDatagrams;
+        private long lastReport = System.nanoTime();
+
+        // At most once per second, and only when something changed
+        void report(int index, int flows) {
+            long now = System.nanoTime();
+            if (now - lastReport < 1_000_000_000L) {
+                return;
+            }
+            double seconds = (now - lastReport) / 1e9;
+            lastReport = now;
+            if (datagrams == lastDatagrams) {
+                return;
+            }
+            System.out.printf("UDP io-%d: %.0f datagrams/s from %d flows, %d lost, %d late, %d malformed, "
+                    + "%d without buffer so far%n", index, (datagrams - lastDatagrams) / seconds, flows, lost, late,
+                    malformed, noBuffer);
+            lastDatagrams = datagrams;
+        }
+    }
+}
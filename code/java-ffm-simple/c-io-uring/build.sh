@@ -1,5 +1,7 @@
 #!/bin/bash
 sudo apt-get update
 sudo apt-get install liburing-dev
-# gcc -O2 -Wall -Wextra -fPIC -shared -o libiouring_tcp.so io_uring_tcp_io.c -luring
-gcc -shared -fPIC -o libiouring_tcp.so io_uring_tcp_sender.c -luring
\ No newline at end of file
+# libiouring_tcp.so: per-thread ring, connect/listen/accept, send/recv/sendmsg helpers, async ops (follow, gather, receiver) and batched UDP
+gcc -O2 -Wall -Wextra -fPIC -shared -o libiouring_tcp.so io_uring_tcp_io.c -luring
+# io_uring_tcp_sender.so: one-shot send_buffer_io_uring used by source mode
+gcc -shared -fPIC -o io_uring_tcp_sender.so io_uring_tcp_sender.c -luring
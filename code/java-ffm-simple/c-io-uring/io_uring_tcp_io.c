@@ -2,23 +2,66 @@
 // Build example (Ubuntu):
 //   gcc -O2 -Wall -Wextra -fPIC -shared -o libiouring_tcp.so io_uring_tcp_io.c -luring
 
+#define _GNU_SOURCE // sendmmsg/recvmmsg
 #include <liburing.h>
 #include <unistd.h>
 #include <errno.h>
+#include <limits.h>
+#include <stdint.h>
 #include <stdio.h>
 #include <string.h>
 #include <arpa/inet.h>
 #include <netinet/in.h>
+#include <netinet/udp.h>
 #include <sys/socket.h>
+#include <sys/time.h>
 #include <sys/types.h>
+#include <sys/uio.h>
+#include <time.h>
 
 #ifndef MSG_NOSIGNAL
 #define MSG_NOSIGNAL 0
 #endif
 
-// -------- Global ring (single instance) --------
-static struct io_uring g_ring;
-static int g_ring_inited = 0;
+#ifndef IOV_MAX
+#define IOV_MAX 1024
+#endif
+
+// -------- Counters --------
+// Updated with relaxed atomics on every op instead of printing. Java maps the struct
+// returned by io_uring_stats() and samples it whenever it wants (NativeIoStats.java).
+struct io_stats
+{
+    uint64_t submits;        // io_uring_submit* calls
+    uint64_t sqes;           // SQEs handed to the kernel
+    uint64_t completions;    // CQEs consumed
+    uint64_t wait_ns;        // time blocked waiting for CQEs
+    uint64_t bytes_sent;
+    uint64_t bytes_received;
+    uint64_t errors;         // CQEs with res < 0
+};
+
+static struct io_stats g_stats;
+
+#define STAT_ADD(field, n) __atomic_fetch_add(&g_stats.field, (uint64_t)(n), __ATOMIC_RELAXED)
+
+struct io_stats *io_uring_stats(void)
+{
+    return &g_stats;
+}
+
+static inline uint64_t now_ns(void)
+{
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec * 1000000000ULL + (uint64_t)ts.tv_nsec;
+}
+
+// -------- Global ring (one instance per thread) --------
+// Thread-local so that each receiver I/O thread drives its own ring (ReceiverEngine).
+// Callers must stay on the same OS thread (no virtual threads).
+static __thread struct io_uring g_ring;
+static __thread int g_ring_inited = 0;
 
 static inline struct io_uring_sqe *get_sqe_retry()
 {
@@ -33,6 +76,26 @@ static inline struct io_uring_sqe *get_sqe_retry()
     return sqe;
 }
 
+// Submits what is queued and blocks for the next CQE, accounting both in g_stats
+static int submit_and_wait_one(struct io_uring_cqe **cqe)
+{
+    int ret = io_uring_submit(&g_ring);
+    if (ret < 0)
+        return ret;
+    STAT_ADD(submits, 1);
+    STAT_ADD(sqes, ret);
+
+    uint64_t start = now_ns();
+    ret = io_uring_wait_cqe(&g_ring, cqe);
+    STAT_ADD(wait_ns, now_ns() - start);
+    if (ret < 0)
+        return ret;
+    STAT_ADD(completions, 1);
+    if ((*cqe)->res < 0)
+        STAT_ADD(errors, 1);
+    return 0;
+}
+
 // -------- Lifecycle --------
 int io_uring_global_init(unsigned queue_depth)
 {
@@ -94,8 +157,7 @@ void io_uring_close(int sockfd)
 }
 
 // -------- Connection management (server) --------
-// Create a listening socket
-int io_uring_listen(int port, int backlog)
+static int listen_on(int port, int backlog, int reuse_port)
 {
     if (!g_ring_inited)
     {
@@ -109,6 +171,11 @@ int io_uring_listen(int port, int backlog)
 
     int opt = 1;
     setsockopt(listen_fd, SOL_SOCKET, SO_REUSEADDR, &opt, sizeof(opt));
+    if (reuse_port && setsockopt(listen_fd, SOL_SOCKET, SO_REUSEPORT, &opt, sizeof(opt)) < 0)
+    {
+        close(listen_fd);
+        return -1;
+    }
 
     struct sockaddr_in addr;
     memset(&addr, 0, sizeof(addr));
@@ -131,6 +198,19 @@ int io_uring_listen(int port, int backlog)
     return listen_fd;
 }
 
+// Create a listening socket
+int io_uring_listen(int port, int backlog)
+{
+    return listen_on(port, backlog, 0);
+}
+
+// Like io_uring_listen, but several sockets, e.g. one per I/O thread, can listen on
+// the same port; the kernel spreads incoming connections over them
+int io_uring_listen_reuseport(int port, int backlog)
+{
+    return listen_on(port, backlog, 1);
+}
+
 // Accept a client connection
 int io_uring_accept(int listen_fd)
 {
@@ -156,12 +236,9 @@ int io_uring_accept_async(int listen_fd)
         return -EAGAIN;
 
     io_uring_prep_accept(sqe, listen_fd, NULL, NULL, 0);
-    int ret = io_uring_submit(&g_ring);
-    if (ret < 0)
-        return ret;
 
     struct io_uring_cqe *cqe = NULL;
-    ret = io_uring_wait_cqe(&g_ring, &cqe);
+    int ret = submit_and_wait_one(&cqe);
     if (ret < 0)
         return ret;
 
@@ -181,21 +258,19 @@ int io_uring_send(int sockfd, const void *buffer, size_t length)
         return -EAGAIN;
 
     io_uring_prep_send(sqe, sockfd, buffer, length, MSG_NOSIGNAL);
-    int ret = io_uring_submit(&g_ring);
-    if (ret < 0)
-        return ret;
 
     struct io_uring_cqe *cqe = NULL;
-    ret = io_uring_wait_cqe(&g_ring, &cqe);
+    int ret = submit_and_wait_one(&cqe);
     if (ret < 0)
     {
-        fprintf(stderr, "io_uring_submit failed: %s\n", strerror(-ret));
+        fprintf(stderr, "io_uring_wait_cqe failed: %s\n", strerror(-ret));
         return ret;
     }
 
     int sent = cqe->res;
     io_uring_cqe_seen(&g_ring, cqe);
-    printf("Sent %d bytes\n", sent);
+    if (sent > 0)
+        STAT_ADD(bytes_sent, sent);
     return sent;
 }
 
@@ -227,17 +302,16 @@ int io_uring_recv(int sockfd, void *buffer, size_t length)
         return -EAGAIN;
 
     io_uring_prep_recv(sqe, sockfd, buffer, length, 0);
-    int ret = io_uring_submit(&g_ring);
-    if (ret < 0)
-        return ret;
 
     struct io_uring_cqe *cqe = NULL;
-    ret = io_uring_wait_cqe(&g_ring, &cqe);
+    int ret = submit_and_wait_one(&cqe);
     if (ret < 0)
         return ret;
 
     int recvd = cqe->res;
     io_uring_cqe_seen(&g_ring, cqe);
+    if (recvd > 0)
+        STAT_ADD(bytes_received, recvd);
     return recvd;
 }
 
@@ -260,3 +334,355 @@ int io_uring_recv_exact(int sockfd, void *buffer, size_t length)
     }
     return (int)total;
 }
+
+// -------- Gather send --------
+// Sends everything described by iov[0..iovcnt) with IORING_OP_SENDMSG, at most IOV_MAX
+// entries per op, so a batch can point at its pieces wherever they live (see
+// GatherSender.java). Short sends are resumed by advancing the array in place, so its
+// contents are consumed. Returns the bytes sent, or -errno.
+long long io_uring_sendmsg_all(int sockfd, struct iovec *iov, int iovcnt)
+{
+    if (!g_ring_inited)
+        return -EINVAL;
+
+    long long total = 0;
+    while (iovcnt > 0)
+    {
+        struct msghdr msg;
+        memset(&msg, 0, sizeof(msg));
+        msg.msg_iov = iov;
+        msg.msg_iovlen = iovcnt < IOV_MAX ? iovcnt : IOV_MAX;
+
+        struct io_uring_sqe *sqe = get_sqe_retry();
+        if (!sqe)
+            return -EAGAIN;
+        io_uring_prep_sendmsg(sqe, sockfd, &msg, MSG_NOSIGNAL);
+
+        struct io_uring_cqe *cqe = NULL;
+        int ret = submit_and_wait_one(&cqe);
+        if (ret < 0)
+            return ret;
+        int sent = cqe->res;
+        io_uring_cqe_seen(&g_ring, cqe);
+        if (sent <= 0)
+            return (sent < 0) ? sent : -EPIPE;
+        STAT_ADD(bytes_sent, sent);
+        total += sent;
+
+        // Drop the entries that went out completely and trim a partially sent one
+        size_t left = (size_t)sent;
+        while (iovcnt > 0 && left >= iov->iov_len)
+        {
+            left -= iov->iov_len;
+            iov++;
+            iovcnt--;
+        }
+        if (left > 0)
+        {
+            iov->iov_base = (char *)iov->iov_base + left;
+            iov->iov_len -= left;
+        }
+    }
+    return total;
+}
+
+// -------- Asynchronous ops --------
+// io_uring_queue_* only place an SQE tagged with user_data; nothing is submitted
+// until io_uring_reap, so one syscall covers every op queued since the last reap.
+// This lets a single thread keep many connections in flight (AsyncRing.java).
+
+struct completion
+{
+    uint64_t user_data;
+    int32_t res;
+    uint32_t flags;
+};
+
+#define REAP_BATCH 256
+
+int io_uring_queue_accept(int listen_fd, uint64_t user_data)
+{
+    struct io_uring_sqe *sqe = get_sqe_retry();
+    if (!sqe)
+        return -EAGAIN;
+    io_uring_prep_accept(sqe, listen_fd, NULL, NULL, 0);
+    io_uring_sqe_set_data64(sqe, user_data);
+    return 0;
+}
+
+int io_uring_queue_recv(int sockfd, void *buffer, size_t length, uint64_t user_data)
+{
+    struct io_uring_sqe *sqe = get_sqe_retry();
+    if (!sqe)
+        return -EAGAIN;
+    io_uring_prep_recv(sqe, sockfd, buffer, length, 0);
+    io_uring_sqe_set_data64(sqe, user_data);
+    return 0;
+}
+
+// Submits everything queued, waits for at least one completion (timeout_ns < 0: no
+// limit, 0: do not wait) and copies up to max completions to out.
+// Returns the number of completions copied, or -errno.
+int io_uring_reap(struct completion *out, int max, long long timeout_ns)
+{
+    if (!g_ring_inited || max <= 0)
+        return -EINVAL;
+
+    uint64_t start = now_ns();
+    int ret;
+    if (timeout_ns < 0)
+    {
+        ret = io_uring_submit_and_wait(&g_ring, 1);
+    }
+    else if (timeout_ns == 0)
+    {
+        ret = io_uring_submit(&g_ring);
+    }
+    else
+    {
+        struct io_uring_cqe *cqe = NULL;
+        struct __kernel_timespec ts = {
+            .tv_sec = timeout_ns / 1000000000LL,
+            .tv_nsec = timeout_ns % 1000000000LL};
+        ret = io_uring_submit_and_wait_timeout(&g_ring, &cqe, 1, &ts, NULL);
+    }
+    if (ret < 0 && ret != -ETIME && ret != -EINTR)
+        return ret;
+    STAT_ADD(submits, 1);
+    if (ret > 0)
+        STAT_ADD(sqes, ret);
+    if (timeout_ns != 0)
+        STAT_ADD(wait_ns, now_ns() - start);
+
+    struct io_uring_cqe *cqes[REAP_BATCH];
+    int total = 0;
+    while (total < max)
+    {
+        unsigned want = (unsigned)(max - total) < REAP_BATCH ? (unsigned)(max - total) : REAP_BATCH;
+        unsigned got = io_uring_peek_batch_cqe(&g_ring, cqes, want);
+        if (got == 0)
+            break;
+        for (unsigned i = 0; i < got; i++)
+        {
+            out[total].user_data = io_uring_cqe_get_data64(cqes[i]);
+            out[total].res = cqes[i]->res;
+            out[total].flags = cqes[i]->flags;
+            if (cqes[i]->res < 0)
+                STAT_ADD(errors, 1);
+            total++;
+        }
+        io_uring_cq_advance(&g_ring, got);
+        STAT_ADD(completions, got);
+    }
+    return total;
+}
+
+// -------- UDP datagrams --------
+// For loss-tolerant fan-in, where head-of-line blocking hurts more than a lost
+// packet (UdpSender.java, UdpTransport.java). Datagrams go out and come in with
+// sendmmsg/recvmmsg, one syscall per burst. With UDP_SEGMENT (GSO) one message
+// carries up to 64 equally sized datagrams that the kernel or NIC splits; with
+// UDP_GRO the kernel hands the receiver runs of datagrams from one sender coalesced
+// into one message, together with their segment size. These calls do not use the ring.
+
+#ifndef SOL_UDP
+#define SOL_UDP 17
+#endif
+#ifndef UDP_SEGMENT
+#define UDP_SEGMENT 103
+#endif
+#ifndef UDP_GRO
+#define UDP_GRO 104
+#endif
+
+#define UDP_MAX_SEGMENTS 64  // kernel limit per GSO message
+#define UDP_GSO_MAX_BYTES 65000 // a GSO message must stay below the 64 KB IP length
+#define UDP_BATCH 64         // messages per sendmmsg/recvmmsg call
+
+// One received message; with GRO it holds length / segment datagrams (the last may be shorter)
+struct datagram_info
+{
+    uint32_t length;  // bytes received
+    uint32_t segment; // GRO segment size, equal to length when not coalesced
+    uint32_t addr;    // sender IPv4 address, network order
+    uint32_t port;    // sender port
+};
+
+// Connected UDP socket to ip:port. gso_segment > 0 turns on UDP_SEGMENT with that
+// datagram size. Returns the fd, or -errno.
+int udp_open_sender(const char *ip, int port, int gso_segment, int sndbuf)
+{
+    int fd = socket(AF_INET, SOCK_DGRAM, 0);
+    if (fd < 0)
+        return -errno;
+    if (sndbuf > 0)
+        setsockopt(fd, SOL_SOCKET, SO_SNDBUF, &sndbuf, sizeof(sndbuf));
+
+    struct sockaddr_in addr;
+    memset(&addr, 0, sizeof(addr));
+    addr.sin_family = AF_INET;
+    addr.sin_port = htons(port);
+    if (inet_pton(AF_INET, ip, &addr.sin_addr) <= 0)
+    {
+        close(fd);
+        return -EINVAL;
+    }
+    if (connect(fd, (struct sockaddr *)&addr, sizeof(addr)) < 0 ||
+        (gso_segment > 0 && setsockopt(fd, SOL_UDP, UDP_SEGMENT, &gso_segment, sizeof(gso_segment)) < 0))
+    {
+        int err = errno;
+        close(fd);
+        return -err;
+    }
+    return fd;
+}
+
+// UDP socket bound to port on all interfaces, with SO_REUSEPORT if reuse_port (one per
+// I/O thread, the kernel spreads senders over them) and UDP_GRO if gro. Receives time
+// out after a second so the caller gets to report while no data arrives. Returns the
+// fd, or -errno.
+int udp_open_receiver(int port, int gro, int rcvbuf, int reuse_port)
+{
+    int fd = socket(AF_INET, SOCK_DGRAM, 0);
+    if (fd < 0)
+        return -errno;
+
+    int opt = 1;
+    setsockopt(fd, SOL_SOCKET, SO_REUSEADDR, &opt, sizeof(opt));
+    if (rcvbuf > 0)
+        setsockopt(fd, SOL_SOCKET, SO_RCVBUF, &rcvbuf, sizeof(rcvbuf));
+    struct timeval timeout = {.tv_sec = 1, .tv_usec = 0};
+    setsockopt(fd, SOL_SOCKET, SO_RCVTIMEO, &timeout, sizeof(timeout));
+
+    struct sockaddr_in addr;
+    memset(&addr, 0, sizeof(addr));
+    addr.sin_family = AF_INET;
+    addr.sin_addr.s_addr = INADDR_ANY;
+    addr.sin_port = htons(port);
+    if ((reuse_port && setsockopt(fd, SOL_SOCKET, SO_REUSEPORT, &opt, sizeof(opt)) < 0) ||
+        bind(fd, (struct sockaddr *)&addr, sizeof(addr)) < 0 ||
+        (gro && setsockopt(fd, SOL_UDP, UDP_GRO, &opt, sizeof(opt)) < 0))
+    {
+        int err = errno;
+        close(fd);
+        return -err;
+    }
+    return fd;
+}
+
+// Sends count datagrams laid out every slot bytes from buffer; datagram i is lengths[i]
+// bytes long. With gso the socket must have been opened with gso_segment == slot and
+// every datagram but the last must be exactly slot bytes; up to 64 of them then go in
+// one message. Blocks while the socket buffer is full. Returns the datagrams sent, or
+// -errno if none were.
+int udp_send_batch(int fd, const char *buffer, int slot, int count, const int *lengths, int gso)
+{
+    struct mmsghdr msgs[UDP_BATCH];
+    struct iovec iov[UDP_BATCH];
+    int per_msg = 1;
+    if (gso)
+    {
+        per_msg = UDP_GSO_MAX_BYTES / slot;
+        if (per_msg > UDP_MAX_SEGMENTS)
+            per_msg = UDP_MAX_SEGMENTS;
+        if (per_msg < 1)
+            per_msg = 1;
+    }
+
+    int sent = 0;
+    while (sent < count)
+    {
+        // Message m covers datagrams [first[m], first[m + 1])
+        int first[UDP_BATCH + 1];
+        int m = 0;
+        int next = sent;
+        while (m < UDP_BATCH && next < count)
+        {
+            int n = count - next < per_msg ? count - next : per_msg;
+            size_t bytes = (size_t)(n - 1) * slot + lengths[next + n - 1];
+            iov[m].iov_base = (void *)(buffer + (size_t)next * slot);
+            iov[m].iov_len = gso ? bytes : (size_t)lengths[next];
+            memset(&msgs[m], 0, sizeof(msgs[m]));
+            msgs[m].msg_hdr.msg_iov = &iov[m];
+            msgs[m].msg_hdr.msg_iovlen = 1;
+            first[m++] = next;
+            next += n;
+        }
+        first[m] = next;
+
+        int done = sendmmsg(fd, msgs, m, 0);
+        if (done < 0)
+        {
+            if (errno == EINTR)
+                continue;
+            STAT_ADD(errors, 1);
+            return sent > 0 ? sent : -errno;
+        }
+        for (int i = 0; i < done; i++)
+            STAT_ADD(bytes_sent, msgs[i].msg_len);
+        sent = first[done];
+    }
+    return sent;
+}
+
+// Receives up to count (at most 64) messages into slots of slot bytes from buffer,
+// blocking for the first one only. Use 64 KB slots with GRO so a coalesced run fits.
+// Fills info[i] per message. Returns the number of messages, 0 when the receive timed
+// out, or -errno.
+int udp_recv_batch(int fd, char *buffer, int slot, int count, struct datagram_info *info)
+{
+    struct mmsghdr msgs[UDP_BATCH];
+    struct iovec iov[UDP_BATCH];
+    struct sockaddr_in from[UDP_BATCH];
+    char control[UDP_BATCH][CMSG_SPACE(sizeof(int))];
+    if (count > UDP_BATCH)
+        count = UDP_BATCH;
+
+    for (int i = 0; i < count; i++)
+    {
+        iov[i].iov_base = buffer + (size_t)i * slot;
+        iov[i].iov_len = slot;
+        memset(&msgs[i], 0, sizeof(msgs[i]));
+        msgs[i].msg_hdr.msg_iov = &iov[i];
+        msgs[i].msg_hdr.msg_iovlen = 1;
+        msgs[i].msg_hdr.msg_name = &from[i];
+        msgs[i].msg_hdr.msg_namelen = sizeof(from[i]);
+        msgs[i].msg_hdr.msg_control = control[i];
+        msgs[i].msg_hdr.msg_controllen = sizeof(control[i]);
+    }
+
+    int n;
+    do
+    {
+        n = recvmmsg(fd, msgs, count, MSG_WAITFORONE, NULL);
+    } while (n < 0 && errno == EINTR);
+    if (n < 0)
+    {
+        if (errno == EAGAIN || errno == EWOULDBLOCK)
+            return 0;
+        STAT_ADD(errors, 1);
+        return -errno;
+    }
+
+    for (int i = 0; i < n; i++)
+    {
+        struct msghdr *hdr = &msgs[i].msg_hdr;
+        info[i].length = msgs[i].msg_len;
+        info[i].segment = msgs[i].msg_len;
+        info[i].addr = from[i].sin_addr.s_addr;
+        info[i].port = ntohs(from[i].sin_port);
+        for (struct cmsghdr *c = CMSG_FIRSTHDR(hdr); c != NULL; c = CMSG_NXTHDR(hdr, c))
+        {
+            if (c->cmsg_level == SOL_UDP && c->cmsg_type == UDP_GRO)
+            {
+                int segment;
+                memcpy(&segment, CMSG_DATA(c), sizeof(segment));
+                info[i].segment = (uint32_t)segment;
+            }
+        }
+        if (hdr->msg_flags & MSG_TRUNC)
+            STAT_ADD(errors, 1);
+        STAT_ADD(bytes_received, msgs[i].msg_len);
+    }
+    return n;
+}
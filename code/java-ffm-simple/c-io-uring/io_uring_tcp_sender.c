@@ -9,11 +9,37 @@
 #include <arpa/inet.h>
 #include <unistd.h>
 #include <errno.h>
+#include <time.h>
 
 #define PORT 12345
 #define QUEUE_DEPTH 2
 #define SEND_CHUNK (40 * 1024 * 1024) // 40 MB chunks
 
+// Same counter block as libiouring_tcp.so, so Java reads both with NativeIoStats
+struct io_stats {
+    uint64_t submits;
+    uint64_t sqes;
+    uint64_t completions;
+    uint64_t wait_ns;
+    uint64_t bytes_sent;
+    uint64_t bytes_received;
+    uint64_t errors;
+};
+
+static struct io_stats g_stats;
+
+#define STAT_ADD(field, n) __atomic_fetch_add(&g_stats.field, (uint64_t)(n), __ATOMIC_RELAXED)
+
+struct io_stats* io_uring_stats(void) {
+    return &g_stats;
+}
+
+static inline uint64_t now_ns(void) {
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec * 1000000000ULL + (uint64_t)ts.tv_nsec;
+}
+
 // Exposed function for FFM
 int send_buffer_io_uring(const char* ip, int port, void* buffer, size_t length) {
     printf("Attempting to connect to %s:%d\n", ip, port);
@@ -79,9 +105,13 @@ int send_buffer_io_uring(const char* ip, int port, void* buffer, size_t length)
             fprintf(stderr, "io_uring_submit failed: %s\n", strerror(-ret));
             break;
         }
+        STAT_ADD(submits, 1);
+        STAT_ADD(sqes, ret);
 
         struct io_uring_cqe* cqe;
+        uint64_t wait_start = now_ns();
         ret = io_uring_wait_cqe(&ring, &cqe);
+        STAT_ADD(wait_ns, now_ns() - wait_start);
         if (ret < 0) {
             fprintf(stderr, "io_uring_wait_cqe failed: %s\n", strerror(-ret));
             break;
@@ -89,8 +119,10 @@ int send_buffer_io_uring(const char* ip, int port, void* buffer, size_t length)
 
         int sent_now = cqe->res;
         io_uring_cqe_seen(&ring, cqe);
+        STAT_ADD(completions, 1);
 
         if (sent_now < 0) {
+            STAT_ADD(errors, 1);
             fprintf(stderr, "send failed: %s\n", strerror(-sent_now));
             break;
         }
@@ -103,15 +135,12 @@ int send_buffer_io_uring(const char* ip, int port, void* buffer, size_t length)
         ptr += sent_now;
         remaining -= sent_now;
         total_sent += sent_now;
-
-        // Debug per-chunk
-        printf("Sent %d bytes, %zu remaining\n", sent_now, remaining);
+        STAT_ADD(bytes_sent, sent_now);
     }
 
     close(sockfd);
     io_uring_queue_exit(&ring);
 
-    printf("Total bytes sent: %zu\n", total_sent);
     return (int)total_sent;
 }
 
@@ -0,0 +1,110 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide bookkeeping of off-heap memory handed out by {@link TrackedArena}s:
+ * live bytes per allocating call site and per open arena, the peak of live bytes and
+ * the total allocated, from which {@link #report} derives an allocation rate.
+ *
+ * Bytes of an arena count as live until the arena is closed. Start the JVM with
+ * {@code -Dffm.allocation.report=true} to print a report at shutdown that lists every
+ * arena still open at that point, i.e. memory that was never released.
+ */
+public final class AllocationRegistry {
+
+    private static final Map<String, AtomicLong> LIVE_BY_CALL_SITE = new ConcurrentHashMap<>();
+    private static final Map<TrackedArena, Boolean> OPEN_ARENAS = new ConcurrentHashMap<>();
+    private static final AtomicLong LIVE = new AtomicLong();
+    private static final AtomicLong PEAK = new AtomicLong();
+    private static final LongAdder TOTAL_ALLOCATED = new LongAdder();
+    private static final LongAdder ALLOCATIONS = new LongAdder();
+    private static final long START_NANOS = System.nanoTime();
+
+    private static long lastReportNanos = START_NANOS;
+    private static long lastReportTotal;
+
+    static {
+        if (Boolean.getBoolean("ffm.allocation.report")) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> report(System.err), "allocation-report"));
+        }
+    }
+
+    private AllocationRegistry() {
+    }
+
+    static void opened(TrackedArena arena) {
+        OPEN_ARENAS.put(arena, Boolean.TRUE);
+    }
+
+    static void allocated(String callSite, long bytes) {
+        LIVE_BY_CALL_SITE.computeIfAbsent(callSite, k -> new AtomicLong()).addAndGet(bytes);
+        long live = LIVE.addAndGet(bytes);
+        PEAK.accumulateAndGet(live, Math::max);
+        TOTAL_ALLOCATED.add(bytes);
+        ALLOCATIONS.increment();
+    }
+
+    static void closed(TrackedArena arena, Map<String, Long> bytesByCallSite) {
+        OPEN_ARENAS.remove(arena);
+        long released = 0;
+        for (Map.Entry<String, Long> e : bytesByCallSite.entrySet()) {
+            LIVE_BY_CALL_SITE.get(e.getKey()).addAndGet(-e.getValue());
+            released += e.getValue();
+        }
+        LIVE.addAndGet(-released);
+    }
+
+    public static long liveBytes() {
+        return LIVE.get();
+    }
+
+    public static long peakBytes() {
+        return PEAK.get();
+    }
+
+    public static long totalAllocatedBytes() {
+        return TOTAL_ALLOCATED.sum();
+    }
+
+    /**
+     * Prints totals, the allocation rate since start and since the previous report, and
+     * the live bytes per call site and per open arena, largest first.
+     */
+    public static synchronized void report(PrintStream out) {
+        long now = System.nanoTime();
+        long total = TOTAL_ALLOCATED.sum();
+        double sinceStart = (now - START_NANOS) / 1e9;
+        double sinceLast = (now - lastReportNanos) / 1e9;
+        out.printf("Off-heap: live %s, peak %s, allocated %s in %d allocations%n",
+                formatBytes(LIVE.get()), formatBytes(PEAK.get()), formatBytes(total), ALLOCATIONS.sum());
+        out.printf("Allocation rate: %.1f MB/s since start, %.1f MB/s since last report%n",
+                total / sinceStart / (1024 * 1024), (total - lastReportTotal) / sinceLast / (1024 * 1024));
+        lastReportNanos = now;
+        lastReportTotal = total;
+
+        List<Map.Entry<String, AtomicLong>> sites = new ArrayList<>(LIVE_BY_CALL_SITE.entrySet());
+        sites.removeIf(e -> e.getValue().get() == 0);
+        sites.sort((a, b) -> Long.compare(b.getValue().get(), a.getValue().get()));
+        out.println("Live by call site:");
+        for (Map.Entry<String, AtomicLong> e : sites) {
+            out.printf("  %12s  %s%n", formatBytes(e.getValue().get()), e.getKey());
+        }
+
+        List<TrackedArena> arenas = new ArrayList<>(OPEN_ARENAS.keySet());
+        arenas.sort((a, b) -> Long.compare(b.liveBytes(), a.liveBytes()));
+        out.println("Open arenas (not closed yet):");
+        for (TrackedArena arena : arenas) {
+            out.printf("  %12s  %s, opened at %s%n", formatBytes(arena.liveBytes()), arena.name(), arena.openedAt());
+        }
+    }
+
+    private static String formatBytes(long bytes) {
+        return bytes < 1024 * 1024 ? String.format("%.1f KB", bytes / 1024.0)
+                : String.format("%.2f MB", bytes / (1024.0 * 1024));
+    }
+}
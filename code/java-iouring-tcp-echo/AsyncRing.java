@@ -0,0 +1,201 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.GroupLayout;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Java side of the shim's asynchronous ops: queue accept/recv/send tagged with a
+ * 64-bit user data, then {@link #reap} submits them all and collects completions.
+ *
+ * The native ring is thread-local, so an instance must only be used from the
+ * platform thread that called {@link #init}.
+ */
+public final class AsyncRing {
+
+    static final GroupLayout COMPLETION = MemoryLayout.structLayout(
+            ValueLayout.JAVA_LONG.withName("user_data"),
+            ValueLayout.JAVA_INT.withName("res"),
+            ValueLayout.JAVA_INT.withName("flags")).withName("completion");
+
+    private static final VarHandle VH_USER_DATA = COMPLETION.varHandle(PathElement.groupElement("user_data"));
+    private static final VarHandle VH_RES = COMPLETION.varHandle(PathElement.groupElement("res"));
+
+    private final MethodHandle mhGlobalInit;
+    private final MethodHandle mhGlobalShutdown;
+    private final MethodHandle mhQueueAccept;
+    private final MethodHandle mhQueueRecv;
+    private final MethodHandle mhQueueSend;
+    private final MethodHandle mhQueueRecvTimeout;
+    private final MethodHandle mhQueueSendTimeout;
+    private final MethodHandle mhQueueCancel;
+    private final MethodHandle mhReap;
+    private final MethodHandle mhClose;
+
+    private final Arena arena = Arena.ofConfined();
+    private final MemorySegment completions;
+    private final int maxCompletions;
+    private final IoMetrics metrics = IoMetrics.INSTANCE;
+    // Only asked whether they are enabled, so reap allocates an event only while recording
+    private final IoEvents.SubmitBatch submitProbe = new IoEvents.SubmitBatch();
+    private final IoEvents.CompletionBatch completionProbe = new IoEvents.CompletionBatch();
+    private int queued; // ops queued since the last reap
+
+    public AsyncRing(SymbolLookup lib, int maxCompletions) {
+        Linker linker = Linker.nativeLinker();
+        mhGlobalInit = linker.downcallHandle(lib.find("io_uring_global_init").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        mhGlobalShutdown = linker.downcallHandle(lib.find("io_uring_global_shutdown").orElseThrow(),
+                FunctionDescriptor.ofVoid());
+        mhQueueAccept = linker.downcallHandle(lib.find("io_uring_queue_accept").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG));
+        mhQueueRecv = linker.downcallHandle(lib.find("io_uring_queue_recv").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG));
+        mhQueueSend = linker.downcallHandle(lib.find("io_uring_queue_send").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG));
+        mhQueueRecvTimeout = linker.downcallHandle(lib.find("io_uring_queue_recv_timeout").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG));
+        mhQueueSendTimeout = linker.downcallHandle(lib.find("io_uring_queue_send_timeout").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG));
+        mhQueueCancel = linker.downcallHandle(lib.find("io_uring_queue_cancel").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG));
+        mhReap = linker.downcallHandle(lib.find("io_uring_reap").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT,
+                        ValueLayout.JAVA_LONG));
+        mhClose = linker.downcallHandle(lib.find("io_uring_close").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+        this.maxCompletions = maxCompletions;
+        this.completions = arena.allocate(COMPLETION, maxCompletions);
+    }
+
+    public void init(int queueDepth) throws Throwable {
+        int ret = (int) mhGlobalInit.invokeExact(queueDepth);
+        if (ret < 0) {
+            throw new IllegalStateException("io_uring_global_init failed: " + ret);
+        }
+    }
+
+    public void queueAccept(int listenFd, long userData) throws Throwable {
+        check((int) mhQueueAccept.invokeExact(listenFd, userData), "accept");
+        queued++;
+    }
+
+    /**
+     * Queues a recv of up to {@code length} bytes into {@code buffer} at {@code offset}.
+     * The offset lets a short transfer continue in the same buffer without slicing it,
+     * which would allocate in the loop.
+     */
+    public void queueRecv(int fd, MemorySegment buffer, long offset, long length, long userData) throws Throwable {
+        check((int) mhQueueRecv.invokeExact(fd, buffer, offset, length, userData), "recv");
+        queued++;
+    }
+
+    public void queueSend(int fd, MemorySegment buffer, long offset, long length, long userData) throws Throwable {
+        check((int) mhQueueSend.invokeExact(fd, buffer, offset, length, userData), "send");
+        queued++;
+    }
+
+    /**
+     * Queues a recv that is cancelled by a linked {@code IORING_OP_LINK_TIMEOUT} if it
+     * has not completed after {@code timeoutNanos}; it then completes with
+     * {@code -ECANCELED}. The timeout's own completion never shows up in {@link #reap}.
+     */
+    public void queueRecv(int fd, MemorySegment buffer, long offset, long length, long userData, long timeoutNanos)
+            throws Throwable {
+        check((int) mhQueueRecvTimeout.invokeExact(fd, buffer, offset, length, userData, timeoutNanos),
+                "recv_timeout");
+        queued += timeoutNanos > 0 ? 2 : 1;
+    }
+
+    /**
+     * Send counterpart of {@link #queueRecv(int, MemorySegment, long, long, long, long)};
+     * a peer that stops reading can no longer hold the op and its buffer forever.
+     */
+    public void queueSend(int fd, MemorySegment buffer, long offset, long length, long userData, long timeoutNanos)
+            throws Throwable {
+        check((int) mhQueueSendTimeout.invokeExact(fd, buffer, offset, length, userData, timeoutNanos),
+                "send_timeout");
+        queued += timeoutNanos > 0 ? 2 : 1;
+    }
+
+    /**
+     * Asks the kernel to cancel the pending op tagged {@code userData}. The op still
+     * completes, usually with {@code -ECANCELED}, and only then is its buffer free.
+     */
+    public void queueCancel(long userData) throws Throwable {
+        check((int) mhQueueCancel.invokeExact(userData), "cancel");
+        queued++;
+    }
+
+    /**
+     * Submits queued ops and collects completions; {@code timeoutNanos < 0} waits
+     * indefinitely, {@code 0} does not wait. Returns the number of completions.
+     */
+    public int reap(long timeoutNanos) throws Throwable {
+        int submitted = queued;
+        queued = 0;
+        if (submitted > 0 && submitProbe.isEnabled()) {
+            IoEvents.SubmitBatch submitEvent = new IoEvents.SubmitBatch();
+            submitEvent.ops = submitted;
+            submitEvent.commit();
+        }
+
+        IoEvents.CompletionBatch completionEvent = completionProbe.isEnabled() ? new IoEvents.CompletionBatch() : null;
+        if (completionEvent != null) {
+            completionEvent.begin();
+        }
+        long start = System.nanoTime();
+        int n = (int) mhReap.invokeExact(completions, maxCompletions, timeoutNanos);
+        long waited = System.nanoTime() - start;
+        if (n < 0) {
+            throw new IllegalStateException("io_uring_reap failed: " + n);
+        }
+        if (completionEvent != null) {
+            completionEvent.end();
+            if (completionEvent.shouldCommit()) {
+                completionEvent.completions = n;
+                completionEvent.timeout = timeoutNanos;
+                completionEvent.commit();
+            }
+        }
+
+        metrics.submitBatches.increment();
+        metrics.submittedOps.add(submitted);
+        metrics.completions.add(n);
+        metrics.cqeWaitNanos.add(waited);
+        return n;
+    }
+
+    public long userData(int i) {
+        return (long) VH_USER_DATA.get(completions, i * COMPLETION.byteSize());
+    }
+
+    public int result(int i) {
+        return (int) VH_RES.get(completions, i * COMPLETION.byteSize());
+    }
+
+    public void closeFd(int fd) throws Throwable {
+        mhClose.invokeExact(fd);
+    }
+
+    public void close() throws Throwable {
+        mhGlobalShutdown.invokeExact();
+        arena.close();
+    }
+
+    private static void check(int ret, String op) {
+        if (ret < 0) {
+            throw new IllegalStateException("io_uring_queue_" + op + " failed: " + ret);
+        }
+    }
+}
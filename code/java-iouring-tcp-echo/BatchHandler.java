@@ -0,0 +1,25 @@
+/**
+ * Processing stage behind the {@link ReceiverEngine}, independent of the receive loop.
+ *
+ * The receiver frames with {@link RecordFramer#RAW}, so a batch holds the bytes of one
+ * read as they came. The engine calls a handler from all of its I/O threads at once,
+ * one connection per thread at a time, so handlers must be thread-safe.
+ */
+interface BatchHandler {
+
+    record Connection(long id, String transport, String remote) {
+    }
+
+    default void onConnect(Connection connection) {
+    }
+
+    /**
+     * Processes {@code batch}. Returns {@code true} when done with it, so its buffer is
+     * reused for the connection's next read, or {@code false} to keep the buffer until
+     * {@link RecordBatch#release()}; the connection then continues in a fresh buffer.
+     */
+    boolean onBatch(RecordBatch batch);
+
+    default void onDisconnect(Connection connection) {
+    }
+}
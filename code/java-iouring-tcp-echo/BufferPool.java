@@ -0,0 +1,63 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed set of equally sized off-heap buffers carved out of one arena.
+ * {@link #acquire()} blocks while every buffer is in use, which pushes back on the
+ * receive loop instead of growing native memory.
+ */
+public final class BufferPool implements AutoCloseable {
+
+    private final Arena arena;
+    private final MemorySegment block;
+    private final long bufferSize;
+    private final BlockingQueue<MemorySegment> free;
+
+    public BufferPool(int buffers, long bufferSize) {
+        this.arena = TrackedArena.ofShared("buffer-pool");
+        this.bufferSize = bufferSize;
+        this.free = new ArrayBlockingQueue<>(buffers);
+        this.block = NativeMemory.allocate(arena, buffers * bufferSize); // huge pages if enabled
+        for (int i = 0; i < buffers; i++) {
+            free.add(block.asSlice(i * bufferSize, bufferSize));
+        }
+    }
+
+    public long bufferSize() {
+        return bufferSize;
+    }
+
+    public MemorySegment acquire() throws InterruptedException {
+        return free.take();
+    }
+
+    /**
+     * Non-blocking variant for event loops that must not stall; null when the pool is empty.
+     */
+    public MemorySegment tryAcquire() {
+        return free.poll();
+    }
+
+    public void release(MemorySegment buffer) {
+        free.add(buffer);
+    }
+
+    /**
+     * Binds all buffers to the calling thread's NUMA node, see
+     * {@link ThreadPlacement#bindToLocalNode}; false when the kernel refused.
+     */
+    public boolean bindToLocalNode() {
+        return ThreadPlacement.bindToLocalNode(block);
+    }
+
+    public int available() {
+        return free.size();
+    }
+
+    @Override
+    public void close() {
+        arena.close();
+    }
+}
@@ -0,0 +1,215 @@
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+/**
+ * Single-threaded io_uring echo loop: every connection has one recv or send in flight
+ * and whatever arrives is written back unchanged before the next recv is queued.
+ *
+ * Ops are tagged with {@code connection << 2 | op}, so a completion maps straight back
+ * to its connection slot without any lookup. Each connection borrows one buffer from
+ * the pool for its lifetime; when the pool is empty new clients are refused.
+ *
+ * Misbehaving peers are reaped so they cannot hold slots and buffers forever. Each
+ * send carries a linked timeout, which catches peers that stop reading. A
+ * {@link TimerWheel} holds each connection's idle deadline, pushed out on every
+ * receive. When it expires the pending recv is cancelled. The buffer only goes back to
+ * the pool once that op has completed, because the kernel may write into it until then.
+ */
+public final class EchoServer {
+
+    private static final int OP_ACCEPT = 0;
+    private static final int OP_RECV = 1;
+    private static final int OP_SEND = 2;
+    private static final int ECANCELED = 125;
+    private static final long TICK_NANOS = 10_000_000; // 10 ms wheel resolution
+
+    private final AsyncRing ring;
+    private final int listenFd;
+    private final BufferPool pool;
+
+    private final int[] fds;
+    private final MemorySegment[] buffers;
+    private final int[] pending; // bytes received and not yet echoed
+    private final int[] echoed;
+    private final int[] inFlight; // op of the single pending recv or send
+    private final boolean[] reaping; // cancel queued, close when the op completes
+    private final TimerWheel idleDeadlines;
+    private final long idleTimeoutNanos;
+    private final long sendTimeoutNanos;
+    private int freeSlot;
+    private int open;
+    private long reapedIdle;
+    private long reapedStalled;
+    private long reported;
+    private long lastReport;
+
+    public EchoServer(AsyncRing ring, int listenFd, BufferPool pool, int maxConnections, long idleTimeoutNanos,
+            long sendTimeoutNanos) {
+        this.ring = ring;
+        this.listenFd = listenFd;
+        this.pool = pool;
+        this.fds = new int[maxConnections];
+        this.buffers = new MemorySegment[maxConnections];
+        this.pending = new int[maxConnections];
+        this.echoed = new int[maxConnections];
+        this.inFlight = new int[maxConnections];
+        this.reaping = new boolean[maxConnections];
+        this.idleDeadlines = new TimerWheel(maxConnections, TICK_NANOS, System.nanoTime());
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.sendTimeoutNanos = sendTimeoutNanos;
+        Arrays.fill(fds, -1);
+    }
+
+    public void run() throws Throwable {
+        System.out.println("Echoing on fd " + listenFd + ", up to " + fds.length + " connections, idle timeout "
+                + idleTimeoutNanos / 1_000_000 + " ms");
+        ring.queueAccept(listenFd, OP_ACCEPT);
+        while (true) {
+            // Wake up at least once per tick so deadlines fire on time with no traffic
+            int n = ring.reap(idleDeadlines.size() > 0 ? TICK_NANOS : -1);
+            for (int i = 0; i < n; i++) {
+                long userData = ring.userData(i);
+                int res = ring.result(i);
+                int op = (int) (userData & 3);
+                int conn = (int) (userData >>> 2);
+                switch (op) {
+                    case OP_ACCEPT -> onAccept(res);
+                    case OP_RECV -> onRecv(conn, res);
+                    case OP_SEND -> onSend(conn, res);
+                    default -> throw new IllegalStateException("Unknown op " + op);
+                }
+            }
+            long now = System.nanoTime();
+            idleDeadlines.advance(now, this::onIdle);
+            report(now);
+        }
+    }
+
+    private void onAccept(int clientFd) throws Throwable {
+        ring.queueAccept(listenFd, OP_ACCEPT);
+        if (clientFd < 0) {
+            System.err.println("Accept failed: " + clientFd);
+            return;
+        }
+        int conn = nextFreeSlot();
+        MemorySegment buffer = conn < 0 ? null : pool.tryAcquire();
+        if (buffer == null) {
+            if (conn >= 0) {
+                freeSlot = Math.min(freeSlot, conn);
+            }
+            System.err.println("No free connection slot or buffer, refusing fd " + clientFd);
+            ring.closeFd(clientFd);
+            return;
+        }
+        fds[conn] = clientFd;
+        buffers[conn] = buffer;
+        open++;
+        queueRecv(conn);
+    }
+
+    private void onRecv(int conn, int res) throws Throwable {
+        if (reaping[conn]) {
+            closeConnection(conn); // cancelled, or raced the cancel; either way the op is done
+            return;
+        }
+        if (res <= 0) {
+            if (res < 0) {
+                System.err.println("recv failed on fd " + fds[conn] + ": " + res);
+            }
+            closeConnection(conn);
+            return;
+        }
+        IoMetrics.INSTANCE.bytesReceived.add(res);
+        IoMetrics.INSTANCE.batchesReceived.increment();
+        pending[conn] = res;
+        echoed[conn] = 0;
+        queueSend(conn);
+    }
+
+    private void onSend(int conn, int res) throws Throwable {
+        if (reaping[conn]) {
+            closeConnection(conn);
+            return;
+        }
+        if (res == -ECANCELED) {
+            reapedStalled++; // linked timeout: the peer stopped reading
+            closeConnection(conn);
+            return;
+        }
+        if (res < 0) {
+            System.err.println("send failed on fd " + fds[conn] + ": " + res);
+            closeConnection(conn);
+            return;
+        }
+        IoMetrics.INSTANCE.bytesSent.add(res);
+        echoed[conn] += res;
+        if (echoed[conn] < pending[conn]) {
+            queueSend(conn); // short write, send the rest
+        } else {
+            queueRecv(conn);
+        }
+    }
+
+    // Idle deadline passed: cancel the pending op, the connection closes when it completes
+    private void onIdle(int conn) {
+        if (fds[conn] < 0 || reaping[conn]) {
+            return;
+        }
+        reaping[conn] = true;
+        reapedIdle++;
+        try {
+            ring.queueCancel(tag(conn, inFlight[conn]));
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not cancel op of fd " + fds[conn], t);
+        }
+    }
+
+    private void queueRecv(int conn) throws Throwable {
+        MemorySegment buffer = buffers[conn];
+        inFlight[conn] = OP_RECV;
+        idleDeadlines.schedule(conn, System.nanoTime() + idleTimeoutNanos);
+        ring.queueRecv(fds[conn], buffer, 0, buffer.byteSize(), tag(conn, OP_RECV));
+    }
+
+    private void queueSend(int conn) throws Throwable {
+        inFlight[conn] = OP_SEND;
+        idleDeadlines.cancel(conn); // the send has its own linked timeout
+        ring.queueSend(fds[conn], buffers[conn], echoed[conn], pending[conn] - echoed[conn], tag(conn, OP_SEND),
+                sendTimeoutNanos);
+    }
+
+    private void closeConnection(int conn) throws Throwable {
+        ring.closeFd(fds[conn]);
+        pool.release(buffers[conn]);
+        idleDeadlines.cancel(conn);
+        fds[conn] = -1;
+        buffers[conn] = null;
+        reaping[conn] = false;
+        open--;
+        freeSlot = Math.min(freeSlot, conn);
+    }
+
+    private void report(long now) {
+        long reaped = reapedIdle + reapedStalled;
+        if (reaped > reported && now - lastReport >= 1_000_000_000L) {
+            System.out.println("Open connections: " + open + ", reaped idle: " + reapedIdle + ", reaped stalled: "
+                    + reapedStalled);
+            reported = reaped;
+            lastReport = now;
+        }
+    }
+
+    private int nextFreeSlot() {
+        for (int i = freeSlot; i < fds.length; i++) {
+            if (fds[i] < 0) {
+                freeSlot = i + 1;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long tag(int conn, int op) {
+        return ((long) conn << 2) | op;
+    }
+}
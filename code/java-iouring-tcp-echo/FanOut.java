@@ -0,0 +1,129 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards every received batch to all connected downstream subscribers.
+ *
+ * Subscribers share the same pooled off-heap buffer: each one holds a reference on
+ * the {@link SharedBatch} until its write completes. Every subscriber has its own
+ * bounded queue and writer thread, so a slow one only fills its own queue; once it
+ * lags by {@code maxPendingBatches} it is disconnected and the others carry on.
+ */
+public final class FanOut {
+
+    private final int port;
+    private final int maxPendingBatches;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    public FanOut(int port, int maxPendingBatches) {
+        this.port = port;
+        this.maxPendingBatches = maxPendingBatches;
+    }
+
+    public Thread start() {
+        return Thread.ofPlatform().name("fanout-acceptor").daemon().start(this::acceptLoop);
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Hands the batch to every subscriber and drops the caller's reference.
+     */
+    public void publish(SharedBatch batch) {
+        for (Subscriber subscriber : subscribers) {
+            batch.retain();
+            if (!subscriber.offer(batch)) {
+                batch.release();
+                subscriber.close("lagging by " + maxPendingBatches + " batches");
+            }
+        }
+        batch.release();
+    }
+
+    private void acceptLoop() {
+        try (ServerSocketChannel serverSocket = ServerSocketChannel.open()) {
+            serverSocket.bind(new InetSocketAddress(port));
+            System.out.println("Fan-out listening for subscribers on port " + port);
+            while (true) {
+                SocketChannel channel = serverSocket.accept();
+                channel.socket().setTcpNoDelay(true);
+                Subscriber subscriber = new Subscriber(channel);
+                subscribers.add(subscriber);
+                // NIO writes park virtual threads cleanly, unlike the native ring calls
+                subscriber.writer = Thread.startVirtualThread(subscriber::drain);
+                System.out.println("Subscriber connected: " + channel.getRemoteAddress()
+                        + " (" + subscribers.size() + " total)");
+            }
+        } catch (IOException e) {
+            System.err.println("Fan-out acceptor stopped: " + e.getMessage());
+        }
+    }
+
+    private final class Subscriber {
+        final SocketChannel channel;
+        final BlockingQueue<SharedBatch> pending = new ArrayBlockingQueue<>(maxPendingBatches);
+        volatile Thread writer;
+        boolean closed;
+        long sentBytes;
+
+        Subscriber(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        synchronized boolean offer(SharedBatch batch) {
+            return !closed && pending.offer(batch);
+        }
+
+        void drain() {
+            try {
+                while (true) {
+                    SharedBatch batch = pending.take();
+                    try {
+                        ByteBuffer buf = batch.data().asByteBuffer();
+                        while (buf.hasRemaining()) {
+                            sentBytes += channel.write(buf);
+                        }
+                    } finally {
+                        batch.release();
+                    }
+                }
+            } catch (IOException e) {
+                close(e.getMessage());
+            } catch (InterruptedException e) {
+                // closed by the publisher
+            }
+        }
+
+        void close(String reason) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                SharedBatch batch;
+                while ((batch = pending.poll()) != null) {
+                    batch.release();
+                }
+            }
+            subscribers.remove(this);
+            if (writer != null && writer != Thread.currentThread()) {
+                writer.interrupt();
+            }
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // already gone
+            }
+            System.out.println("Subscriber dropped (" + reason + ") after " + sentBytes + " bytes");
+        }
+    }
+}
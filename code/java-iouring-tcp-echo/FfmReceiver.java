@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.FunctionDescriptor;
 import java.lang.foreign.Linker;
@@ -6,88 +7,156 @@ import java.lang.foreign.SymbolLookup;
 import java.lang.foreign.ValueLayout;
 import java.lang.invoke.MethodHandle;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 
 public class FfmReceiver {
 
     private static final ValueLayout.OfByte BYTE = ValueLayout.JAVA_BYTE;
+    private static final int MAX_CONNECTIONS = 16; // served at once
+    private static final long BUFFER_SIZE = 1024 * 1024;
+    private static final long IDLE_TIMEOUT_NANOS = 60_000_000_000L; // silent clients are closed after this
 
     public static void main(String[] args) throws Throwable {
-        int queueDepth = 32;
+        // Modes: print (default)
+        //        store <segment dir>                  also serves replay on port + 1
+        //        fanout [max pending per subscriber]  subscribers connect on port + 2
+        //        echo [max connections] [idle s]      writes every byte back, see LoadGenerator
+        String mode = args.length > 0 ? args[0] : "print";
         int port = 22345;
-        int backlog = 128;
-        long bufferSize = 8 * 1024 * 1024; // 8 MB buffer per client
+
+        SegmentLog segmentLog = null;
+        if ("store".equals(mode)) {
+            Path dir = Path.of(args.length > 1 ? args[1] : "segments");
+            segmentLog = SegmentLog.open(SegmentLogConfig.defaults(dir));
+            System.out.println("Storing received batches in " + dir.toAbsolutePath());
+        }
+
+        FanOut fanOut = null;
+        int maxPending = 0;
+        if ("fanout".equals(mode)) {
+            maxPending = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+            if (maxPending < 1) {
+                throw new IllegalArgumentException("max pending per subscriber must be at least 1: " + maxPending);
+            }
+            fanOut = new FanOut(port + 2, maxPending);
+            fanOut.start();
+        }
 
         try (Arena arena = Arena.ofShared()) {
 
             // Load the shared library
             SymbolLookup lib = SymbolLookup.libraryLookup("./libiouring_tcp.so", arena);
-            Linker linker = Linker.nativeLinker();
-
-            // 1️⃣ Global io_uring Init
-            MemorySegment globalInitAddr = lib.find("io_uring_global_init").get();
-            MethodHandle mhGlobalInit = linker.downcallHandle(globalInitAddr,
-                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
-            int ret = (int) mhGlobalInit.invokeExact(queueDepth);
-            System.out.println("io_uring_global_init returned: " + ret);
-
-            // 2️⃣ Listen (server socket)
-            MemorySegment listenAddr = lib.find("io_uring_listen").get();
-            MethodHandle mhListen = linker.downcallHandle(listenAddr,
-                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
-            int listenFd = (int) mhListen.invokeExact(port, backlog);
-            if (listenFd < 0) {
-                throw new RuntimeException("io_uring_listen failed, fd=" + listenFd);
+            IoMetrics metrics = IoMetrics.register(lib, arena);
+
+            if ("echo".equals(mode)) {
+                echo(lib, port, args);
+                return;
             }
-            System.out.println("Server listening on port " + port + ", fd=" + listenFd);
-
-            // 3️⃣ Accept clients in a loop
-            MemorySegment acceptAddr = lib.find("io_uring_accept").get();
-            MethodHandle mhAccept = linker.downcallHandle(acceptAddr,
-                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
-
-            MemorySegment recvAddr = lib.find("io_uring_recv").get();
-            MethodHandle mhRecv = linker.downcallHandle(recvAddr,
-                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
-
-            while (true) {
-                int clientFd = (int) mhAccept.invokeExact(listenFd);
-                if (clientFd < 0) {
-                    System.err.println("Accept failed, fd=" + clientFd);
-                    continue;
-                }
-                System.out.println("Client connected, fd=" + clientFd);
 
-                // Allocate buffer for this client
-                MemorySegment buffer = arena.allocate(bufferSize);
+            if (segmentLog != null) {
+                new ReplayServer(segmentLog, port + 1, lib).start();
+            }
 
-                int bytesReceived = (int) mhRecv.invokeExact(clientFd, buffer, bufferSize);
-                if (bytesReceived < 0) {
-                    System.err.println("io_uring_recv failed, bytes=" + bytesReceived);
-                    continue;
-                }
-                System.out.println("Received bytes: " + bytesReceived);
+            // Every other mode is a handler on the shared receive loop, which serves all
+            // clients at once on its own ring and hands on every read as it came
+            BatchHandler handler = switch (mode) {
+                case "print" -> printHandler();
+                case "store" -> storeHandler(segmentLog, metrics);
+                case "fanout" -> fanOutHandler(fanOut);
+                default -> throw new IllegalArgumentException("Unknown mode " + mode
+                        + ", expected print, store, fanout or echo");
+            };
+            // Subscribers get every batch in order and are dropped once they lag by maxPending,
+            // so together they hold at most the last maxPending + 1 (one in write) on top of
+            // the buffer each connection receives into. One I/O thread keeps a single order.
+            int buffers = MAX_CONNECTIONS + (fanOut != null ? maxPending + 1 : 0);
+            new ReceiverEngine(new IoUringTransport(lib, MAX_CONNECTIONS, IDLE_TIMEOUT_NANOS), handler,
+                    RecordFramer.RAW, port, 1, buffers, BUFFER_SIZE).run();
+        }
+    }
+
+    // Echo serves all clients concurrently from the same thread-local ring
+    private static void echo(SymbolLookup lib, int port, String[] args) throws Throwable {
+        int maxConnections = args.length > 1 ? Integer.parseInt(args[1]) : 1024;
+        long idleNanos = (args.length > 2 ? Long.parseLong(args[2]) : 60) * 1_000_000_000L;
+        Linker linker = Linker.nativeLinker();
+
+        // Pin the echo loop first, so the buffers allocated below land on its node
+        ThreadPlacement.pinFromProperty(ThreadPlacement.RING_CPUS, 0);
+
+        // 1️⃣ Global io_uring Init
+        MemorySegment globalInitAddr = lib.find("io_uring_global_init").get();
+        MethodHandle mhGlobalInit = linker.downcallHandle(globalInitAddr,
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        int ret = (int) mhGlobalInit.invokeExact(1024);
+        System.out.println("io_uring_global_init returned: " + ret);
+
+        // 2️⃣ Listen (server socket)
+        MemorySegment listenAddr = lib.find("io_uring_listen").get();
+        MethodHandle mhListen = linker.downcallHandle(listenAddr,
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        int listenFd = (int) mhListen.invokeExact(port, 128);
+        if (listenFd < 0) {
+            throw new RuntimeException("io_uring_listen failed, fd=" + listenFd);
+        }
+        System.out.println("Server listening on port " + port + ", fd=" + listenFd);
+
+        BufferPool echoBuffers = new BufferPool(maxConnections, 64 * 1024);
+        new EchoServer(new AsyncRing(lib, 512), listenFd, echoBuffers, maxConnections, idleNanos,
+                5_000_000_000L).run();
+    }
+
+    private static BatchHandler printHandler() {
+        return new BatchHandler() {
+            @Override
+            public void onConnect(Connection connection) {
+                System.out.println("Client connected, " + connection.remote());
+            }
+
+            @Override
+            public boolean onBatch(RecordBatch batch) {
+                MemorySegment data = batch.segment();
+                System.out.println("Received bytes: " + data.byteSize());
 
                 // Print first 128 bytes for debugging (optional)
-                int displayLen = Math.min(128, bytesReceived);
+                int displayLen = (int) Math.min(128, data.byteSize());
                 byte[] arr = new byte[displayLen];
                 for (int i = 0; i < displayLen; i++) {
-                    arr[i] = buffer.get(BYTE, i);
+                    arr[i] = data.get(BYTE, i);
                 }
                 System.out.println("First " + displayLen + " bytes:\n" +
                         new String(arr, StandardCharsets.US_ASCII));
+                return true;
+            }
 
-                // Close client socket
-                MemorySegment closeAddr = lib.find("io_uring_close").get();
-                MethodHandle mhClose = linker.downcallHandle(closeAddr,
-                        FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
-                mhClose.invokeExact(clientFd);
-                System.out.println("Client fd " + clientFd + " closed.");
+            @Override
+            public void onDisconnect(Connection connection) {
+                System.out.println("Client " + connection.remote() + " closed.");
             }
+        };
+    }
 
-            // 4️⃣ Optional: shutdown ring (never reached in infinite loop)
-            // MemorySegment shutdownAddr = lib.find("io_uring_global_shutdown").get();
-            // MethodHandle mhShutdown = linker.downcallHandle(shutdownAddr, FunctionDescriptor.ofVoid());
-            // mhShutdown.invokeExact();
-        }
+    private static BatchHandler storeHandler(SegmentLog segmentLog, IoMetrics metrics) {
+        return batch -> {
+            try {
+                segmentLog.append(batch.segment());
+            } catch (IOException | IllegalArgumentException e) {
+                // Dropped rather than thrown, which would end the receive loop for everyone
+                System.err.println("Dropped batch of " + batch.segment().byteSize() + " bytes from "
+                        + batch.connection().remote() + ": " + e);
+                return true;
+            }
+            metrics.batchesStored.increment(); // JMX instead of a line per batch
+            metrics.bytesStored.add(batch.segment().byteSize());
+            return true;
+        };
+    }
+
+    // Subscribers share the received buffer itself; it is released once the last is done
+    private static BatchHandler fanOutHandler(FanOut fanOut) {
+        return batch -> {
+            fanOut.publish(new SharedBatch(batch));
+            return false;
+        };
     }
 }
@@ -0,0 +1,109 @@
+import java.util.Arrays;
+
+/**
+ * Allocation-free latency histogram with HDR-style log-linear buckets.
+ *
+ * Values below 128 get a bucket each; above that every power of two is split into
+ * 64 linear sub-buckets, so any recorded value is reported with at most 1/64
+ * (about 1.6%) relative error. The whole {@code long} range fits in 3712 counters
+ * allocated up front, and {@link #record} only does a bit scan and an increment.
+ * Not thread-safe: give every recording thread its own instance and {@link #add} them.
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 7;
+    private static final int SUB_COUNT = 1 << SUB_BITS; // 128
+    private static final int HALF_SUB_COUNT = SUB_COUNT >> 1; // 64
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * HALF_SUB_COUNT; // 3712
+
+    private final long[] counts = new long[BUCKETS];
+    private long totalCount;
+    private long min = Long.MAX_VALUE;
+    private long max;
+    private double sum;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[indexOf(value)]++;
+        totalCount++;
+        sum += value;
+        if (value < min) {
+            min = value;
+        }
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public long count() {
+        return totalCount;
+    }
+
+    public long min() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long max() {
+        return max;
+    }
+
+    public double mean() {
+        return totalCount == 0 ? 0 : sum / totalCount;
+    }
+
+    /**
+     * Smallest recorded value such that {@code percentile} percent of all values are
+     * at or below it (up to bucket resolution).
+     */
+    public long valueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestEquivalentValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BITS - 1);
+        return (shift << (SUB_BITS - 1)) + (int) (value >>> shift);
+    }
+
+    static long highestEquivalentValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index >> (SUB_BITS - 1)) - 1;
+        long sub = HALF_SUB_COUNT + (index & (HALF_SUB_COUNT - 1));
+        return ((sub + 1) << shift) - 1;
+    }
+}
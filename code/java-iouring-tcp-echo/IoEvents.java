@@ -0,0 +1,59 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR events for the native I/O hot paths. Record with e.g.
+ * {@code -XX:StartFlightRecording:filename=io.jfr} and look under "FFM I/O".
+ * An event that is not enabled costs a field check; stack traces are off
+ * because the call sites are fixed and would only add overhead.
+ */
+final class IoEvents {
+
+    private IoEvents() {
+    }
+
+    @Name("dev.roray.ffm.SubmitBatch")
+    @Label("Submit Batch")
+    @Category({ "FFM I/O", "io_uring" })
+    @Description("SQEs handed to the kernel in one submit")
+    @StackTrace(false)
+    static final class SubmitBatch extends Event {
+        @Label("Ops")
+        int ops;
+    }
+
+    @Name("dev.roray.ffm.CompletionBatch")
+    @Label("Completion Batch")
+    @Category({ "FFM I/O", "io_uring" })
+    @Description("One submit-and-reap round; the duration is the time spent waiting for CQEs")
+    @StackTrace(false)
+    static final class CompletionBatch extends Event {
+        @Label("Completions")
+        int completions;
+
+        @Label("Timeout")
+        @Timespan(Timespan.NANOSECONDS)
+        long timeout;
+    }
+
+    @Name("dev.roray.ffm.IoOp")
+    @Label("I/O Op")
+    @Category({ "FFM I/O", "io_uring" })
+    @Description("A completed op of the receive loop, with its CQE result: bytes moved, 0 at EOF or a negative errno")
+    @StackTrace(false)
+    static final class IoOp extends Event {
+        @Label("Op")
+        String op;
+
+        @Label("File Descriptor")
+        int fd;
+
+        @Label("Result")
+        int result;
+    }
+}
@@ -0,0 +1,171 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.SymbolLookup;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide I/O and encoder counters. Each counter is a {@link LongAdder}, which
+ * stripes updates over per-thread cells, so hot loops on several threads can bump
+ * them without contending on one cache line. Sums are only computed when JMX reads
+ * an attribute.
+ */
+public final class IoMetrics implements IoMetricsMXBean {
+
+    public static final IoMetrics INSTANCE = new IoMetrics();
+
+    final LongAdder submitBatches = new LongAdder();
+    final LongAdder submittedOps = new LongAdder();
+    final LongAdder completions = new LongAdder();
+    final LongAdder cqeWaitNanos = new LongAdder();
+    final LongAdder bytesSent = new LongAdder();
+    final LongAdder bytesReceived = new LongAdder();
+    final LongAdder batchesReceived = new LongAdder();
+    final LongAdder batchesStored = new LongAdder();
+    final LongAdder bytesStored = new LongAdder();
+    final LongAdder recordsEncoded = new LongAdder();
+    final LongAdder encodeNanos = new LongAdder();
+
+    private final AtomicReference<NativeIoStats> nativeStats = new AtomicReference<>();
+    private boolean registered;
+
+    private IoMetrics() {
+    }
+
+    /**
+     * Registers the MBean on first use; later calls just return the instance.
+     */
+    public static synchronized IoMetrics register() {
+        if (!INSTANCE.registered) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE,
+                        new ObjectName("dev.roray.ffm:type=IoMetrics"));
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register IoMetrics MBean", e);
+            }
+            INSTANCE.registered = true;
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Like {@link #register()}, and if {@code lib} exports counters they become the
+     * {@code Native*} attributes until {@code libArena}, which loaded it, is closed.
+     */
+    public static IoMetrics register(SymbolLookup lib, Arena libArena) throws Throwable {
+        NativeIoStats stats = NativeIoStats.attach(lib, libArena);
+        if (stats != null) {
+            INSTANCE.nativeStats.set(stats);
+        }
+        return register();
+    }
+
+    // The shim's counters, or null when none is loaded or its library has been unloaded
+    private NativeIoStats nativeStats() {
+        NativeIoStats stats = nativeStats.get();
+        if (stats != null && !stats.attached()) {
+            nativeStats.compareAndSet(stats, null);
+            return null;
+        }
+        return stats;
+    }
+
+    @Override
+    public long getSubmitBatches() {
+        return submitBatches.sum();
+    }
+
+    @Override
+    public long getSubmittedOps() {
+        return submittedOps.sum();
+    }
+
+    @Override
+    public long getCompletions() {
+        return completions.sum();
+    }
+
+    @Override
+    public long getCqeWaitNanos() {
+        return cqeWaitNanos.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getBatchesReceived() {
+        return batchesReceived.sum();
+    }
+
+    @Override
+    public long getBatchesStored() {
+        return batchesStored.sum();
+    }
+
+    @Override
+    public long getBytesStored() {
+        return bytesStored.sum();
+    }
+
+    @Override
+    public long getRecordsEncoded() {
+        return recordsEncoded.sum();
+    }
+
+    @Override
+    public long getEncodeNanos() {
+        return encodeNanos.sum();
+    }
+
+    @Override
+    public long getNativeSubmits() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.submits();
+    }
+
+    @Override
+    public long getNativeSqes() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.sqes();
+    }
+
+    @Override
+    public long getNativeCompletions() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.completions();
+    }
+
+    @Override
+    public long getNativeWaitNanos() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.waitNanos();
+    }
+
+    @Override
+    public long getNativeBytesSent() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.bytesSent();
+    }
+
+    @Override
+    public long getNativeBytesReceived() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.bytesReceived();
+    }
+
+    @Override
+    public long getNativeErrors() {
+        NativeIoStats stats = nativeStats();
+        return stats == null ? 0 : stats.errors();
+    }
+}
@@ -0,0 +1,43 @@
+/**
+ * JMX view of {@link IoMetrics}, registered as {@code dev.roray.ffm:type=IoMetrics}.
+ * The {@code Native*} attributes are read from the shim's counter block and stay 0
+ * when no shim with counters is loaded.
+ */
+public interface IoMetricsMXBean {
+
+    long getSubmitBatches();
+
+    long getSubmittedOps();
+
+    long getCompletions();
+
+    long getCqeWaitNanos();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    long getBatchesReceived();
+
+    long getBatchesStored();
+
+    long getBytesStored();
+
+    long getRecordsEncoded();
+
+    long getEncodeNanos();
+
+    long getNativeSubmits();
+
+    long getNativeSqes();
+
+    long getNativeCompletions();
+
+    long getNativeWaitNanos();
+
+    long getNativeBytesSent();
+
+    long getNativeBytesReceived();
+
+    long getNativeErrors();
+}
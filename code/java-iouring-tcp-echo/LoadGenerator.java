@@ -0,0 +1,165 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Multi-connection request/response load generator for the receiver's echo mode.
+ *
+ * One platform thread drives all connections through an {@link AsyncRing}. Each
+ * connection sends a message of {@code size} bytes and waits for the full echo before
+ * the next one. Sends follow a fixed schedule derived from the target rate, and the
+ * round-trip latency is measured from the <em>intended</em> send time rather than the
+ * moment the send was issued. When the server stalls, the messages that should have
+ * gone out meanwhile are sent late and their waiting time is counted, which corrects
+ * for coordinated omission. A rate of 0 runs closed-loop (send as soon as the echo is
+ * back), where intended and actual send time are the same.
+ *
+ * Usage: LoadGenerator [host] [port] [connections] [size] [rate msg/s] [seconds] [warmup seconds]
+ */
+public class LoadGenerator {
+
+    private static final int OP_SEND = 0;
+    private static final int OP_RECV = 1;
+
+    public static void main(String[] args) throws Throwable {
+        String host = args.length > 0 ? args[0] : "127.0.0.1";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 22345;
+        int connections = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int size = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+        long rate = args.length > 4 ? Long.parseLong(args[4]) : 10_000;
+        long seconds = args.length > 5 ? Long.parseLong(args[5]) : 30;
+        long warmupSeconds = args.length > 6 ? Long.parseLong(args[6]) : 5;
+
+        ThreadPlacement.pinFromProperty(ThreadPlacement.RING_CPUS, 0);
+        try (Arena arena = Arena.ofShared()) {
+            SymbolLookup lib = SymbolLookup.libraryLookup("./libiouring_tcp.so", arena);
+            MethodHandle mhConnect = Linker.nativeLinker().downcallHandle(lib.find("io_uring_connect").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+
+            AsyncRing ring = new AsyncRing(lib, 4 * connections);
+            ring.init(Math.max(32, Integer.highestOneBit(2 * connections - 1) << 1));
+
+            int[] fds = new int[connections];
+            MemorySegment sendBuffers = arena.allocate((long) connections * size, 64);
+            MemorySegment recvBuffers = arena.allocate((long) connections * size, 64);
+            MemorySegment[] sendSlices = new MemorySegment[connections];
+            MemorySegment[] recvSlices = new MemorySegment[connections];
+            for (int c = 0; c < connections; c++) {
+                fds[c] = (int) mhConnect.invokeExact(arena.allocateFrom(host), port);
+                if (fds[c] < 0) {
+                    throw new IllegalStateException("io_uring_connect failed, fd=" + fds[c]);
+                }
+                sendSlices[c] = sendBuffers.asSlice((long) c * size, size);
+                recvSlices[c] = recvBuffers.asSlice((long) c * size, size);
+                for (int i = 0; i < size; i++) {
+                    sendBuffers.set(ValueLayout.JAVA_BYTE, (long) c * size + i, (byte) ('a' + (i + c) % 26));
+                }
+            }
+            System.out.printf("Connected %d connections to %s:%d, %d byte messages at %s for %ds (+%ds warmup)%n",
+                    connections, host, port, size, rate > 0 ? rate + " msg/s" : "max rate", seconds, warmupSeconds);
+
+            // Per-connection state, all preallocated so the loop below does not allocate
+            long intervalNanos = rate > 0 ? connections * 1_000_000_000L / rate : 0;
+            long[] intended = new long[connections];
+            int[] sent = new int[connections];
+            int[] received = new int[connections];
+            boolean[] busy = new boolean[connections];
+            Histogram histogram = new Histogram();
+
+            long start = System.nanoTime();
+            long measureStart = start + warmupSeconds * 1_000_000_000L;
+            long end = measureStart + seconds * 1_000_000_000L;
+            for (int c = 0; c < connections; c++) {
+                intended[c] = start + (intervalNanos * c) / connections; // spread the first sends
+            }
+
+            boolean measuring = warmupSeconds == 0;
+            long completed = 0;
+            int inFlight = 0;
+            while (true) {
+                long now = System.nanoTime();
+                if (!measuring && now >= measureStart) {
+                    histogram.reset();
+                    completed = 0;
+                    measuring = true;
+                }
+                boolean stopping = now >= end;
+                if (stopping && inFlight == 0) {
+                    break;
+                }
+
+                // Issue every send that is due; a late one keeps its intended time
+                long nextDue = Long.MAX_VALUE;
+                for (int c = 0; c < connections && !stopping; c++) {
+                    if (busy[c]) {
+                        continue;
+                    }
+                    if (intended[c] <= now) {
+                        if (intervalNanos == 0) {
+                            intended[c] = now;
+                        }
+                        busy[c] = true;
+                        sent[c] = 0;
+                        received[c] = 0;
+                        inFlight++;
+                        ring.queueSend(fds[c], sendSlices[c], 0, size, tag(c, OP_SEND));
+                        ring.queueRecv(fds[c], recvSlices[c], 0, size, tag(c, OP_RECV));
+                    } else {
+                        nextDue = Math.min(nextDue, intended[c]);
+                    }
+                }
+
+                long timeout = nextDue == Long.MAX_VALUE ? 1_000_000L : Math.max(1, nextDue - now);
+                int n = ring.reap(Math.min(timeout, 1_000_000L));
+                for (int i = 0; i < n; i++) {
+                    long userData = ring.userData(i);
+                    int res = ring.result(i);
+                    int c = (int) (userData >>> 1);
+                    if (res <= 0) {
+                        throw new IllegalStateException("Connection " + c + " failed or closed: " + res);
+                    }
+                    if ((userData & 1) == OP_SEND) {
+                        sent[c] += res;
+                        if (sent[c] < size) {
+                            ring.queueSend(fds[c], sendSlices[c], sent[c], size - sent[c], tag(c, OP_SEND));
+                        }
+                    } else {
+                        received[c] += res;
+                        if (received[c] < size) {
+                            ring.queueRecv(fds[c], recvSlices[c], received[c], size - received[c],
+                                    tag(c, OP_RECV));
+                        }
+                    }
+                    if (sent[c] == size && received[c] == size && busy[c]) {
+                        histogram.record(System.nanoTime() - intended[c]);
+                        completed++;
+                        busy[c] = false;
+                        inFlight--;
+                        intended[c] += intervalNanos;
+                    }
+                }
+            }
+
+            double elapsed = (System.nanoTime() - measureStart) / 1e9;
+            System.out.printf("Completed %d round trips in %.2f s: %.0f msg/s, %.1f MB/s each way%n",
+                    completed, elapsed, completed / elapsed, completed * (double) size / elapsed / (1024 * 1024));
+            System.out.printf("Latency (us, corrected for coordinated omission): "
+                    + "p50=%.1f p99=%.1f p99.9=%.1f max=%.1f mean=%.1f%n",
+                    histogram.valueAtPercentile(50) / 1e3, histogram.valueAtPercentile(99) / 1e3,
+                    histogram.valueAtPercentile(99.9) / 1e3, histogram.max() / 1e3, histogram.mean() / 1e3);
+
+            for (int fd : fds) {
+                ring.closeFd(fd);
+            }
+            ring.close();
+        }
+    }
+
+    private static long tag(int connection, int op) {
+        return ((long) connection << 1) | op;
+    }
+}
@@ -0,0 +1,251 @@
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Receive loop shared by all transports: runs a {@link Transport} on a configurable
+ * number of I/O threads and turns what they read into {@link RecordBatch}es for one
+ * {@link BatchHandler}.
+ *
+ * A transport only accepts connections and reads bytes. It opens a {@link Session}
+ * per connection, reads into {@link Session#buffer()} at {@link Session#filled()} and
+ * reports the byte count to {@link Session#received}. Framing, buffer leasing and
+ * ownership, handler callbacks and metrics all live here; a {@link RecordFramer.Framing}
+ * says where records end, and this project uses {@link RecordFramer#RAW} to hand on
+ * plain bytes as they arrive. Each I/O thread is pinned to the next core of
+ * {@code -Dffm.cpus.ring} when that property is set, and then allocates its own share
+ * of the buffers, so a connection's buffers sit on the node of the core that reads it
+ * and threads never contend on one pool. Throughput is printed once per second while
+ * data flows.
+ */
+final class ReceiverEngine {
+
+    static final int DEFAULT_BUFFERS = 256;
+    static final long DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    /**
+     * A way of getting bytes off the network.
+     */
+    interface Transport {
+
+        String name();
+
+        /**
+         * Runs I/O thread {@code index} of {@code threads}; returns only on failure.
+         */
+        void serve(ReceiverEngine engine, int index, int threads) throws Throwable;
+    }
+
+    private final Transport transport;
+    private final BatchHandler handler;
+    private final RecordFramer.Framing framing;
+    private final int port;
+    private final int ioThreads;
+    private final int buffersPerThread;
+    private final long bufferSize;
+    private final BufferPool[] pools; // one per I/O thread, created by it
+    private final IoMetrics metrics = IoMetrics.register();
+
+    private final AtomicLong connectionIds = new AtomicLong();
+    private final AtomicInteger open = new AtomicInteger();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder records = new LongAdder();
+
+    ReceiverEngine(Transport transport, BatchHandler handler, RecordFramer.Framing framing, int port, int ioThreads,
+            int buffers, long bufferSize) {
+        this.transport = transport;
+        this.handler = handler;
+        this.framing = framing;
+        this.port = port;
+        this.ioThreads = ioThreads;
+        this.buffersPerThread = (buffers + ioThreads - 1) / ioThreads;
+        this.bufferSize = bufferSize;
+        this.pools = new BufferPool[ioThreads];
+    }
+
+    int port() {
+        return port;
+    }
+
+    long bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * Starts the I/O threads and waits for them; they only end on failure.
+     */
+    void run() throws InterruptedException {
+        System.out.println("Receiving on port " + port + " over " + transport.name() + " with " + ioThreads
+                + " I/O threads, " + buffersPerThread + " buffers of " + bufferSize + " bytes per thread");
+        Thread.ofPlatform().daemon().name("receiver-report").start(this::report);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < ioThreads; i++) {
+            int index = i;
+            threads.add(Thread.ofPlatform().name("io-" + i).start(() -> {
+                boolean pinned = ThreadPlacement.pinFromProperty(ThreadPlacement.RING_CPUS, index) >= 0;
+                pools[index] = new BufferPool(buffersPerThread, bufferSize);
+                if (pinned) {
+                    pools[index].bindToLocalNode(); // recv may be completed by io-wq workers on other cores
+                }
+                try {
+                    transport.serve(this, index, ioThreads);
+                } catch (Throwable t) {
+                    System.err.println(Thread.currentThread().getName() + " failed: " + t);
+                    t.printStackTrace();
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (BufferPool pool : pools) {
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Opens a session for a new connection accepted by I/O thread {@code thread}, whose
+     * buffers it uses, waiting for a free buffer if needed. The session also waits
+     * whenever it needs a buffer later, so it is for transports that may block, one
+     * thread per connection.
+     */
+    Session open(int thread, String remote) throws InterruptedException {
+        BufferPool pool = pools[thread];
+        return new Session(remote, pool, pool.acquire(), true);
+    }
+
+    /**
+     * Like {@link #open}, for event loops that must not block; null when every buffer
+     * is in use. When such a session later finds the pool empty it stalls instead of
+     * waiting, see {@link Session#received}.
+     */
+    Session tryOpen(int thread, String remote) {
+        BufferPool pool = pools[thread];
+        MemorySegment buffer = pool.tryAcquire();
+        return buffer == null ? null : new Session(remote, pool, buffer, false);
+    }
+
+    /**
+     * One connection: its metadata and the buffer its reads go to.
+     */
+    final class Session {
+
+        private final BatchHandler.Connection connection;
+        private final BufferPool pool;
+        private final RecordFramer framer;
+        private final boolean blocking;
+        private boolean stalled;
+
+        private Session(String remote, BufferPool pool, MemorySegment buffer, boolean blocking) {
+            this.connection = new BatchHandler.Connection(connectionIds.incrementAndGet(), transport.name(), remote);
+            this.pool = pool;
+            this.framer = new RecordFramer(buffer, framing);
+            this.blocking = blocking;
+            open.incrementAndGet();
+            handler.onConnect(connection);
+        }
+
+        BatchHandler.Connection connection() {
+            return connection;
+        }
+
+        /**
+         * Buffer the next read goes to; changes when a handler keeps a batch.
+         */
+        MemorySegment buffer() {
+            return framer.buffer();
+        }
+
+        /**
+         * Offset in {@link #buffer()} where the next read goes.
+         */
+        long filled() {
+            return framer.filled();
+        }
+
+        MemorySegment free() {
+            return framer.free();
+        }
+
+        /**
+         * Accounts {@code n} bytes read into {@link #free()} and passes the complete
+         * records to the handler. Returns whether the session can take the next read.
+         *
+         * If the handler keeps the batch, the session continues in a new buffer; that is
+         * how slow stages push back on the transport. When the pool is empty a session
+         * from {@link #open} waits for one, while one from {@link #tryOpen} returns false
+         * and is stalled: the event loop must not read it until {@link #resume}
+         * succeeds, so its socket buffer fills and TCP slows the sender down.
+         */
+        boolean received(int n) throws InterruptedException {
+            bytes.add(n);
+            metrics.bytesReceived.add(n);
+            metrics.batchesReceived.increment();
+            long end = framer.received(n);
+            if (end == 0) {
+                return true;
+            }
+            // The cut-off record is out of the buffer before the handler sees it, since
+            // a handler that keeps the batch may release it on another thread right away
+            MemorySegment buffer = framer.handOver(end);
+            int count = framing.count(buffer, end);
+            records.add(count);
+            boolean done = handler.onBatch(new RecordBatch(connection, buffer, end, count, pool));
+            return continueIn(done ? buffer : blocking ? pool.acquire() : pool.tryAcquire());
+        }
+
+        /**
+         * Retries a stalled session with a buffer from the pool; true once it can take
+         * the next read, at once when it is not stalled.
+         */
+        boolean resume() {
+            return !stalled || continueIn(pool.tryAcquire());
+        }
+
+        private boolean continueIn(MemorySegment next) {
+            stalled = next == null;
+            if (!stalled) {
+                framer.continueIn(next);
+            }
+            return !stalled;
+        }
+
+        void close() {
+            if (framer.pending() > 0) {
+                System.err.println("Connection " + connection.id() + " closed inside a record, dropped "
+                        + framer.pending() + " bytes");
+            }
+            open.decrementAndGet();
+            handler.onDisconnect(connection);
+            if (!stalled) {
+                pool.release(framer.buffer());
+            }
+        }
+    }
+
+    private void report() {
+        long lastBytes = 0;
+        long lastRecords = 0;
+        while (true) {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long totalBytes = bytes.sum();
+            long totalRecords = records.sum();
+            if (totalBytes != lastBytes) {
+                System.out.printf("Receiver: %.1f MB/s, %d records/s, %d connections%n",
+                        (totalBytes - lastBytes) / (1024.0 * 1024), totalRecords - lastRecords, open.get());
+            }
+            lastBytes = totalBytes;
+            lastRecords = totalRecords;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streams stored segments to late subscribers without copying them through Java.
+ *
+ * A subscriber connects and sends a 9 byte request:
+ * <pre>
+ *   byte  kind    0 = start at log offset, 1 = start at batch index
+ *   long  value   little endian
+ * </pre>
+ * The server then splices every stored byte from that point up to the current end of
+ * the log straight from the page cache to the socket and closes the connection.
+ */
+public final class ReplayServer {
+
+    static final byte FROM_OFFSET = 0;
+    static final byte FROM_BATCH = 1;
+    private static final long REQUEST_SIZE = Byte.BYTES + Long.BYTES;
+    private static final long REQUEST_TIMEOUT_NANOS = 5_000_000_000L; // for the whole request
+    private static final int ETIME = 62;
+    private static final int ETIMEDOUT = 110; // what io_uring_recv_timeout makes of a cancelled recv
+    private static final int ECANCELED = 125;
+    private static final ValueLayout.OfLong LONG_UA_LE_LAYOUT = ValueLayout.JAVA_LONG_UNALIGNED
+            .withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    private final SegmentLog log;
+    private final int port;
+    private final MethodHandle mhGlobalInit;
+    private final MethodHandle mhGlobalShutdown;
+    private final MethodHandle mhListen;
+    private final MethodHandle mhAccept;
+    private final MethodHandle mhRecvTimeout;
+    private final MethodHandle mhSpliceFile;
+    private final MethodHandle mhClose;
+    private final AtomicInteger replayThreads = new AtomicInteger();
+
+    public ReplayServer(SegmentLog log, int port, SymbolLookup lib) {
+        this.log = log;
+        this.port = port;
+        Linker linker = Linker.nativeLinker();
+        mhGlobalInit = linker.downcallHandle(lib.find("io_uring_global_init").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        mhGlobalShutdown = linker.downcallHandle(lib.find("io_uring_global_shutdown").orElseThrow(),
+                FunctionDescriptor.ofVoid());
+        mhListen = linker.downcallHandle(lib.find("io_uring_listen").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        mhAccept = linker.downcallHandle(lib.find("io_uring_accept").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+        mhRecvTimeout = linker.downcallHandle(lib.find("io_uring_recv_timeout").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                        ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG));
+        mhSpliceFile = linker.downcallHandle(lib.find("io_uring_splice_file").orElseThrow(),
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, // bytes sent or -errno
+                        ValueLayout.JAVA_INT, // socket fd
+                        ValueLayout.ADDRESS, // file path
+                        ValueLayout.JAVA_LONG, // file offset
+                        ValueLayout.JAVA_LONG)); // length
+        mhClose = linker.downcallHandle(lib.find("io_uring_close").orElseThrow(),
+                FunctionDescriptor.ofVoid(ValueLayout.JAVA_INT));
+    }
+
+    /**
+     * Starts the accept loop on its own platform thread. The native ring is thread-local,
+     * so replay never touches the receive loop's ring; virtual threads are not used
+     * because they may hop between carrier threads.
+     */
+    public Thread start() {
+        return Thread.ofPlatform().name("replay-acceptor").daemon().start(this::acceptLoop);
+    }
+
+    private void acceptLoop() {
+        try {
+            // listen/accept check for an initialised ring on the calling thread
+            int ret = (int) mhGlobalInit.invokeExact(8);
+            if (ret < 0) {
+                System.err.println("Replay io_uring_global_init failed: " + ret);
+                return;
+            }
+            int listenFd = (int) mhListen.invokeExact(port, 128);
+            if (listenFd < 0) {
+                System.err.println("Replay listen failed on port " + port + ", fd=" + listenFd);
+                return;
+            }
+            System.out.println("Replay server listening on port " + port + ", fd=" + listenFd);
+
+            while (true) {
+                int clientFd = (int) mhAccept.invokeExact(listenFd);
+                if (clientFd < 0) {
+                    System.err.println("Replay accept failed, fd=" + clientFd);
+                    continue;
+                }
+                Thread.ofPlatform().name("replay-" + clientFd).daemon().start(() -> replay(clientFd));
+            }
+        } catch (Throwable t) {
+            System.err.println("Replay server stopped: " + t.getMessage());
+        }
+    }
+
+    private void replay(int clientFd) {
+        // Core 0 of the ring list belongs to the receive loop
+        ThreadPlacement.pinFromProperty(ThreadPlacement.RING_CPUS, 1 + replayThreads.getAndIncrement());
+        try (Arena arena = Arena.ofConfined()) {
+            int ret = (int) mhGlobalInit.invokeExact(8);
+            if (ret < 0) {
+                System.err.println("Replay io_uring_global_init failed: " + ret);
+                return;
+            }
+
+            MemorySegment request = arena.allocate(REQUEST_SIZE);
+            if (!readRequest(clientFd, request)) {
+                return;
+            }
+            byte kind = request.get(ValueLayout.JAVA_BYTE, 0);
+            long value = request.get(LONG_UA_LE_LAYOUT, 1);
+            long fromOffset = switch (kind) {
+                case FROM_OFFSET -> value;
+                case FROM_BATCH -> log.offsetOfEntry(value);
+                default -> throw new IllegalArgumentException("Unknown replay request kind " + kind);
+            };
+
+            long start = System.nanoTime();
+            long total = 0;
+            for (SegmentLog.Range range : log.rangesFrom(fromOffset)) {
+                MemorySegment path = arena.allocateFrom(range.path().toString());
+                long sent = (long) mhSpliceFile.invokeExact(clientFd, path, range.position(), range.length());
+                if (sent < 0) {
+                    System.err.println("Replay fd " + clientFd + ": splice failed, errno=" + -sent);
+                    return;
+                }
+                total += sent;
+                if (sent < range.length()) {
+                    break;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Replayed %d bytes from offset %d to fd %d in %.3f s (%.1f MB/s)%n",
+                    total, fromOffset, clientFd, seconds, total / seconds / (1024 * 1024));
+        } catch (Throwable t) {
+            System.err.println("Replay fd " + clientFd + " failed: " + t.getMessage());
+        } finally {
+            try {
+                mhClose.invokeExact(clientFd);
+                mhGlobalShutdown.invokeExact();
+            } catch (Throwable ignored) {
+                // nothing left to clean up
+            }
+        }
+    }
+
+    /**
+     * Reads the request within {@link #REQUEST_TIMEOUT_NANOS}, so a client that connects
+     * and never sends cannot hold its thread forever. False when it did not arrive; the
+     * caller then closes the connection.
+     */
+    private boolean readRequest(int clientFd, MemorySegment request) throws Throwable {
+        long deadline = System.nanoTime() + REQUEST_TIMEOUT_NANOS;
+        long read = 0;
+        while (read < REQUEST_SIZE) {
+            long left = deadline - System.nanoTime();
+            int n = left > 0
+                    ? (int) mhRecvTimeout.invokeExact(clientFd, request.asSlice(read), REQUEST_SIZE - read, left)
+                    : -ETIME;
+            if (n == -ETIMEDOUT || n == -ECANCELED || n == -ETIME) {
+                System.err.println("Replay fd " + clientFd + ": no request within "
+                        + REQUEST_TIMEOUT_NANOS / 1_000_000 + " ms, closing");
+                return false;
+            }
+            if (n <= 0) {
+                System.err.println("Replay fd " + clientFd + ": incomplete request, bytes=" + read + ", ret=" + n);
+                return false;
+            }
+            read += n;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.GroupLayout;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of received batches, stored in rolling memory-mapped segment files.
+ *
+ * Every segment is a pair of files named after the log offset of its first byte:
+ * <pre>
+ *   00000000000000000000.log   raw batch bytes, back to back
+ *   00000000000000000000.idx   one {@link #INDEX_ENTRY} per batch
+ * </pre>
+ * An append is a plain copy into the mapped pages, so there is no syscall per batch.
+ * Dirty pages are pushed to disk (msync) once {@code flushEveryBatches} batches are
+ * pending or {@code flushIntervalMillis} has passed, whichever comes first.
+ *
+ * Appends run on the receive loop, so they never msync themselves: they count pending
+ * batches and signal the flusher thread, which forces the pages without holding the
+ * log's lock. A full segment is likewise handed to the flusher to be forced, unmapped
+ * and trimmed, while appends go on in the next one.
+ */
+public final class SegmentLog implements AutoCloseable {
+
+    private static final ValueLayout LONG_UA_LE_LAYOUT = ValueLayout.JAVA_LONG_UNALIGNED
+            .withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    static final GroupLayout INDEX_ENTRY = MemoryLayout.structLayout(
+            LONG_UA_LE_LAYOUT.withName("offset"), // log offset of the batch
+            LONG_UA_LE_LAYOUT.withName("length"), // batch length, 0 marks an unused entry
+            LONG_UA_LE_LAYOUT.withName("timestamp") // receive time, epoch millis
+    ).withName("index_entry");
+
+    private static final VarHandle VH_OFFSET = INDEX_ENTRY.varHandle(PathElement.groupElement("offset"));
+    private static final VarHandle VH_LENGTH = INDEX_ENTRY.varHandle(PathElement.groupElement("length"));
+    private static final VarHandle VH_TIMESTAMP = INDEX_ENTRY.varHandle(PathElement.groupElement("timestamp"));
+
+    private static final String LOG_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+
+    private final SegmentLogConfig config;
+    private final List<Segment> closedSegments = new ArrayList<>();
+    private final ScheduledExecutorService flusher;
+    private Segment active;
+    private int unflushedBatches;
+    private long lastFlushNanos = System.nanoTime(); // written by the flusher only
+
+    private SegmentLog(SegmentLogConfig config) {
+        this.config = config;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "segment-log-flusher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static SegmentLog open(SegmentLogConfig config) throws IOException {
+        Files.createDirectories(config.directory());
+        SegmentLog log = new SegmentLog(config);
+        log.recover();
+        log.flusher.scheduleWithFixedDelay(log::flushIfDue,
+                config.flushIntervalMillis(), config.flushIntervalMillis(), TimeUnit.MILLISECONDS);
+        return log;
+    }
+
+    /**
+     * Appends one batch and returns its log offset.
+     */
+    public synchronized long append(MemorySegment batch) throws IOException {
+        long length = batch.byteSize();
+        if (length > config.segmentBytes()) {
+            throw new IllegalArgumentException("Batch of " + length + " bytes exceeds segment size "
+                    + config.segmentBytes());
+        }
+        if (length == 0) {
+            return endOffset();
+        }
+        if (active.size + length > config.segmentBytes() || active.entries == config.indexEntries()) {
+            roll();
+        }
+
+        long offset = active.baseOffset + active.size;
+        MemorySegment.copy(batch, 0, active.data, active.size, length);
+
+        long entryOffset = active.entries * INDEX_ENTRY.byteSize();
+        VH_OFFSET.set(active.index, entryOffset, offset);
+        VH_TIMESTAMP.set(active.index, entryOffset, System.currentTimeMillis());
+        VH_LENGTH.set(active.index, entryOffset, length); // written last, marks the entry as used
+
+        active.size += length;
+        active.entries++;
+
+        if (++unflushedBatches == config.flushEveryBatches()) {
+            flusher.execute(this::flush); // once per flush, the count restarts when it runs
+        }
+        return offset;
+    }
+
+    /**
+     * Log offset one past the last stored byte.
+     */
+    public synchronized long endOffset() {
+        return active.baseOffset + active.size;
+    }
+
+    /**
+     * Number of batches stored so far.
+     */
+    public synchronized long entryCount() {
+        return active.firstEntry + active.entries;
+    }
+
+    /**
+     * Log offset of the batch with the given index, or {@link #endOffset()} when it is not stored yet.
+     */
+    public synchronized long offsetOfEntry(long entryIndex) throws IOException {
+        if (entryIndex < 0) {
+            throw new IllegalArgumentException("Negative batch index: " + entryIndex);
+        }
+        if (entryIndex >= entryCount()) {
+            return endOffset();
+        }
+        if (entryIndex >= active.firstEntry) {
+            return (long) VH_OFFSET.get(active.index, (entryIndex - active.firstEntry) * INDEX_ENTRY.byteSize());
+        }
+        for (Segment segment : closedSegments) {
+            if (entryIndex < segment.firstEntry + segment.entries) {
+                try (Arena arena = Arena.ofConfined();
+                        FileChannel idxCh = FileChannel.open(segment.indexPath, StandardOpenOption.READ)) {
+                    MemorySegment index = idxCh.map(FileChannel.MapMode.READ_ONLY, 0, idxCh.size(), arena);
+                    return (long) VH_OFFSET.get(index, (entryIndex - segment.firstEntry) * INDEX_ENTRY.byteSize());
+                }
+            }
+        }
+        throw new IllegalStateException("Batch index " + entryIndex + " not found");
+    }
+
+    /**
+     * File ranges holding everything from {@code fromOffset} up to the current end of the log,
+     * in log order. Bytes appended after the call are not included.
+     */
+    public synchronized List<Range> rangesFrom(long fromOffset) {
+        List<Range> ranges = new ArrayList<>();
+        List<Segment> segments = new ArrayList<>(closedSegments);
+        segments.add(active);
+        for (Segment segment : segments) {
+            long end = segment.baseOffset + segment.size;
+            if (end <= fromOffset) {
+                continue;
+            }
+            long position = Math.max(0, fromOffset - segment.baseOffset);
+            ranges.add(new Range(segment.logPath, position, segment.size - position));
+        }
+        return ranges;
+    }
+
+    public record Range(Path path, long position, long length) {
+    }
+
+    // Runs on the flusher thread, or after it has stopped. Only the range pending at the
+    // start is forced, outside the lock, so appends continue meanwhile; segments are
+    // unmapped on this thread too, so the one being forced stays mapped.
+    private void flush() {
+        Segment segment;
+        long to;
+        synchronized (this) {
+            if (unflushedBatches == 0) {
+                return;
+            }
+            segment = active;
+            to = segment.size;
+            unflushedBatches = 0;
+        }
+        try {
+            segment.data.asSlice(segment.flushedSize, to - segment.flushedSize).force();
+            segment.index.force();
+            segment.flushedSize = to;
+        } catch (RuntimeException e) {
+            System.err.println("Flushing " + segment.logPath.getFileName() + " failed: " + e);
+        }
+        lastFlushNanos = System.nanoTime();
+    }
+
+    private void flushIfDue() {
+        if (System.nanoTime() - lastFlushNanos >= TimeUnit.MILLISECONDS.toNanos(config.flushIntervalMillis())) {
+            flush();
+        }
+    }
+
+    // Flusher thread: forces what is left of a full segment, then unmaps and trims it
+    private void retire(Segment segment) {
+        try {
+            segment.data.asSlice(segment.flushedSize, segment.size - segment.flushedSize).force();
+            segment.index.force();
+            segment.flushedSize = segment.size;
+            segment.unmap();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Closing segment " + segment.logPath.getFileName() + " failed: " + e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown(); // runs the retirements already queued
+        try {
+            if (!flusher.awaitTermination(1, TimeUnit.MINUTES)) {
+                throw new IOException("Segment flusher did not finish");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the segment flusher", e);
+        }
+        synchronized (this) {
+            flush();
+            active.unmap();
+            active = null;
+        }
+    }
+
+    private void roll() throws IOException {
+        Segment full = active;
+        closedSegments.add(full);
+        active = Segment.map(config, full.baseOffset + full.size, full.firstEntry + full.entries);
+        unflushedBatches = 0; // the retirement covers what the full segment still has pending
+        flusher.execute(() -> retire(full));
+        System.out.println("Rolled to segment " + active.logPath.getFileName());
+    }
+
+    private void recover() throws IOException {
+        List<Path> logFiles;
+        try (Stream<Path> files = Files.list(config.directory())) {
+            logFiles = files.filter(p -> p.getFileName().toString().endsWith(LOG_SUFFIX)).sorted().toList();
+        }
+
+        if (logFiles.isEmpty()) {
+            active = Segment.map(config, 0, 0);
+            return;
+        }
+
+        long firstEntry = 0;
+        for (int i = 0; i < logFiles.size() - 1; i++) {
+            Segment segment = Segment.recover(config, baseOffsetOf(logFiles.get(i)), firstEntry);
+            closedSegments.add(segment);
+            firstEntry += segment.entries;
+        }
+        active = Segment.map(config, baseOffsetOf(logFiles.getLast()), firstEntry);
+        active.flushedSize = active.size;
+        System.out.println("Recovered " + (closedSegments.size() + 1) + " segment(s), end offset " + endOffset());
+    }
+
+    private static long baseOffsetOf(Path logFile) {
+        String name = logFile.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+    }
+
+    private static final class Segment {
+        final long baseOffset;
+        final long firstEntry; // index of the segment's first batch in the whole log
+        final Path logPath;
+        final Path indexPath;
+        Arena arena;
+        MemorySegment data;
+        MemorySegment index;
+        long size;
+        long flushedSize;
+        long entries;
+
+        private Segment(SegmentLogConfig config, long baseOffset, long firstEntry) {
+            String name = String.format("%020d", baseOffset);
+            this.baseOffset = baseOffset;
+            this.firstEntry = firstEntry;
+            this.logPath = config.directory().resolve(name + LOG_SUFFIX);
+            this.indexPath = config.directory().resolve(name + INDEX_SUFFIX);
+        }
+
+        // Maps both files read-write at their full configured size and restores size/entries from the index
+        static Segment map(SegmentLogConfig config, long baseOffset, long firstEntry) throws IOException {
+            Segment segment = new Segment(config, baseOffset, firstEntry);
+            segment.arena = Arena.ofShared();
+            try (FileChannel logCh = FileChannel.open(segment.logPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    FileChannel idxCh = FileChannel.open(segment.indexPath,
+                            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                segment.data = logCh.map(FileChannel.MapMode.READ_WRITE, 0, config.segmentBytes(), segment.arena);
+                segment.index = idxCh.map(FileChannel.MapMode.READ_WRITE, 0,
+                        config.indexEntries() * INDEX_ENTRY.byteSize(), segment.arena);
+            }
+            segment.readIndex();
+            return segment;
+        }
+
+        // Reads the index of a closed segment without keeping anything mapped
+        static Segment recover(SegmentLogConfig config, long baseOffset, long firstEntry) throws IOException {
+            Segment segment = new Segment(config, baseOffset, firstEntry);
+            try (Arena arena = Arena.ofConfined();
+                    FileChannel idxCh = FileChannel.open(segment.indexPath, StandardOpenOption.READ)) {
+                segment.index = idxCh.map(FileChannel.MapMode.READ_ONLY, 0, idxCh.size(), arena);
+                segment.readIndex();
+                segment.index = null;
+            }
+            segment.flushedSize = segment.size;
+            return segment;
+        }
+
+        private void readIndex() {
+            long maxEntries = index.byteSize() / INDEX_ENTRY.byteSize();
+            while (entries < maxEntries) {
+                long length = (long) VH_LENGTH.get(index, entries * INDEX_ENTRY.byteSize());
+                if (length == 0) {
+                    break;
+                }
+                size += length;
+                entries++;
+            }
+        }
+
+        // Releases the mapping and trims the log file to the bytes actually written
+        void unmap() throws IOException {
+            arena.close();
+            arena = null;
+            data = null;
+            index = null;
+            try (FileChannel logCh = FileChannel.open(logPath, StandardOpenOption.WRITE)) {
+                logCh.truncate(size);
+            }
+        }
+    }
+}
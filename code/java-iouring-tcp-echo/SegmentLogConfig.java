@@ -0,0 +1,30 @@
+import java.nio.file.Path;
+
+public record SegmentLogConfig(
+    Path directory,
+    long segmentBytes,
+    int indexEntries,
+    int flushEveryBatches,
+    long flushIntervalMillis
+) {
+    public static SegmentLogConfig defaults(Path directory) {
+        // 1 GB segments, up to 64k batches per segment, msync every 64 batches or 200 ms
+        return new SegmentLogConfig(directory, 1024L * 1024 * 1024, 64 * 1024, 64, 200);
+    }
+
+    public SegmentLogConfig withSegmentBytes(long segmentBytes) {
+        return new SegmentLogConfig(directory, segmentBytes, indexEntries, flushEveryBatches, flushIntervalMillis);
+    }
+
+    public SegmentLogConfig withIndexEntries(int indexEntries) {
+        return new SegmentLogConfig(directory, segmentBytes, indexEntries, flushEveryBatches, flushIntervalMillis);
+    }
+
+    public SegmentLogConfig withFlushEveryBatches(int flushEveryBatches) {
+        return new SegmentLogConfig(directory, segmentBytes, indexEntries, flushEveryBatches, flushIntervalMillis);
+    }
+
+    public SegmentLogConfig withFlushIntervalMillis(long flushIntervalMillis) {
+        return new SegmentLogConfig(directory, segmentBytes, indexEntries, flushEveryBatches, flushIntervalMillis);
+    }
+}
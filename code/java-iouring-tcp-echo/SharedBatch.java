@@ -0,0 +1,42 @@
+import java.lang.foreign.MemorySegment;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A received batch shared by several consumers without copying.
+ * The {@link RecordBatch}, kept by its handler, is released when the last reference is.
+ */
+public final class SharedBatch {
+
+    private final RecordBatch batch;
+    private final MemorySegment data;
+    private final AtomicInteger refCount = new AtomicInteger(1);
+
+    SharedBatch(RecordBatch batch) {
+        this.batch = batch;
+        this.data = batch.segment();
+    }
+
+    /**
+     * Read-only view of the received bytes.
+     */
+    public MemorySegment data() {
+        return data.asReadOnly();
+    }
+
+    public SharedBatch retain() {
+        int prev = refCount.getAndIncrement();
+        if (prev <= 0) {
+            throw new IllegalStateException("Batch already released");
+        }
+        return this;
+    }
+
+    public void release() {
+        int left = refCount.decrementAndGet();
+        if (left == 0) {
+            batch.release();
+        } else if (left < 0) {
+            throw new IllegalStateException("Batch released too often");
+        }
+    }
+}
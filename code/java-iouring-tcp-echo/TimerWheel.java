@@ -0,0 +1,183 @@
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hierarchical timing wheel for per-connection deadlines, keyed by connection slot.
+ *
+ * Time is cut into ticks. Level 0 has 256 slots of one tick each; levels 1 to 3 have
+ * 64 slots that each span a whole lap of the level below, so deadlines up to 2^26
+ * ticks ahead are covered (about 7.7 days at 10 ms ticks). A timer sits in a higher
+ * level until that level's slot comes up and is then cascaded down, as in the classic
+ * Linux kernel timer wheel. Scheduling, rescheduling and cancelling are O(1), which
+ * matters because every receive pushes its connection's deadline out again.
+ *
+ * Timers live in intrusive doubly linked lists over int arrays, so nothing is
+ * allocated after construction. Not thread-safe: meant for one event loop thread.
+ */
+public final class TimerWheel {
+
+    private static final int LEVEL0_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVEL0_SLOTS = 1 << LEVEL0_BITS;
+    private static final int LEVEL_SLOTS = 1 << LEVEL_BITS;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = 1L << (LEVEL0_BITS + (LEVELS - 1) * LEVEL_BITS);
+    private static final int NONE = -1;
+    private static final int EXPIRING = LEVEL0_SLOTS + (LEVELS - 1) * LEVEL_SLOTS; // extra list, see advance
+
+    private final long tickNanos;
+    private final long originNanos;
+    private final int[] heads = new int[EXPIRING + 1];
+    private final int[] next;
+    private final int[] prev;
+    private final int[] slotOf; // index into heads, NONE when not scheduled
+    private final long[] expiry; // in ticks
+    private long current; // next tick to process
+    private int size;
+
+    public TimerWheel(int capacity, long tickNanos, long nowNanos) {
+        this.tickNanos = tickNanos;
+        this.originNanos = nowNanos;
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.slotOf = new int[capacity];
+        this.expiry = new long[capacity];
+        Arrays.fill(heads, NONE);
+        Arrays.fill(slotOf, NONE);
+    }
+
+    public long tickNanos() {
+        return tickNanos;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isScheduled(int id) {
+        return slotOf[id] != NONE;
+    }
+
+    /**
+     * Sets the deadline of timer {@code id}, replacing an earlier one. Deadlines are
+     * rounded up to the next tick, and a deadline in the past fires on the next
+     * {@link #advance}.
+     */
+    public void schedule(int id, long deadlineNanos) {
+        if (slotOf[id] != NONE) {
+            unlink(id);
+        } else {
+            size++;
+        }
+        long tick = Math.ceilDiv(deadlineNanos - originNanos, tickNanos);
+        expiry[id] = Math.max(tick, current);
+        link(id);
+    }
+
+    public void cancel(int id) {
+        if (slotOf[id] != NONE) {
+            unlink(id);
+            size--;
+        }
+    }
+
+    /**
+     * Processes every tick up to {@code nowNanos} and passes each timer that expired to
+     * {@code expired}. The callback may schedule or cancel any timer, including the
+     * one it was called for. Returns the number of expired timers.
+     */
+    public int advance(long nowNanos, IntConsumer expired) {
+        long target = (nowNanos - originNanos) / tickNanos;
+        int fired = 0;
+        while (current <= target) {
+            int index = (int) (current & (LEVEL0_SLOTS - 1));
+            if (index == 0) {
+                cascade();
+            }
+            // Due timers move to their own list first: one rescheduled 255 ticks ahead
+            // by the callback maps to the slot being drained and must not fire now
+            for (int id = heads[index]; id != NONE; id = next[id]) {
+                slotOf[id] = EXPIRING;
+            }
+            heads[EXPIRING] = heads[index];
+            heads[index] = NONE;
+            current++;
+            int id;
+            while ((id = heads[EXPIRING]) != NONE) {
+                unlink(id);
+                size--;
+                fired++;
+                expired.accept(id);
+            }
+        }
+        return fired;
+    }
+
+    // Level 0 wrapped: move the timers of the current slot of each higher level down,
+    // continuing upwards only while that level wrapped as well
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = LEVEL0_BITS + (level - 1) * LEVEL_BITS;
+            int index = (int) ((current >>> shift) & (LEVEL_SLOTS - 1));
+            int id = detach(slotIndex(level, index));
+            while (id != NONE) {
+                int following = next[id];
+                link(id);
+                id = following;
+            }
+            if (index != 0) {
+                break;
+            }
+        }
+    }
+
+    private void link(int id) {
+        long tick = expiry[id];
+        long delta = tick - current;
+        int slot;
+        if (delta < LEVEL0_SLOTS) {
+            slot = (int) (tick & (LEVEL0_SLOTS - 1));
+        } else {
+            // Beyond the top level the timer waits in its last slot and is re-placed on cascade
+            long placed = delta < MAX_DELTA ? tick : current + MAX_DELTA - 1;
+            int level = 1;
+            while (level < LEVELS - 1 && placed - current >= 1L << (LEVEL0_BITS + level * LEVEL_BITS)) {
+                level++;
+            }
+            int shift = LEVEL0_BITS + (level - 1) * LEVEL_BITS;
+            slot = slotIndex(level, (int) ((placed >>> shift) & (LEVEL_SLOTS - 1)));
+        }
+        int head = heads[slot];
+        next[id] = head;
+        prev[id] = NONE;
+        if (head != NONE) {
+            prev[head] = id;
+        }
+        heads[slot] = id;
+        slotOf[id] = slot;
+    }
+
+    private void unlink(int id) {
+        int slot = slotOf[id];
+        if (prev[id] != NONE) {
+            next[prev[id]] = next[id];
+        } else {
+            heads[slot] = next[id];
+        }
+        if (next[id] != NONE) {
+            prev[next[id]] = prev[id];
+        }
+        slotOf[id] = NONE;
+    }
+
+    // Empties a slot and returns its former chain, still linked through next[]
+    private int detach(int slot) {
+        int id = heads[slot];
+        heads[slot] = NONE;
+        return id;
+    }
+
+    private static int slotIndex(int level, int index) {
+        return LEVEL0_SLOTS + (level - 1) * LEVEL_SLOTS + index;
+    }
+}
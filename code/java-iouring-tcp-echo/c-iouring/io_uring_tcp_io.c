@@ -2,23 +2,73 @@
 // Build example (Ubuntu):
 //   gcc -O2 -Wall -Wextra -fPIC -shared -o libiouring_tcp.so io_uring_tcp_io.c -luring
 
+#define _GNU_SOURCE // F_SETPIPE_SZ, SPLICE_F_* flags
+
 #include <liburing.h>
 #include <unistd.h>
 #include <errno.h>
+#include <fcntl.h>
+#include <stdint.h>
 #include <stdio.h>
+#include <stdlib.h>
 #include <string.h>
 #include <arpa/inet.h>
 #include <netinet/in.h>
+#include <sys/sendfile.h>
 #include <sys/socket.h>
 #include <sys/types.h>
+#include <time.h>
 
 #ifndef MSG_NOSIGNAL
 #define MSG_NOSIGNAL 0
 #endif
 
-// -------- Global ring (single instance) --------
-static struct io_uring g_ring;
-static int g_ring_inited = 0;
+// -------- Counters --------
+// Updated with relaxed atomics on every op instead of printing. Java maps the struct
+// returned by io_uring_stats() and samples it whenever it wants (NativeIoStats.java).
+struct io_stats
+{
+    uint64_t submits;        // io_uring_submit* calls
+    uint64_t sqes;           // SQEs handed to the kernel
+    uint64_t completions;    // CQEs consumed
+    uint64_t wait_ns;        // time blocked waiting for CQEs
+    uint64_t bytes_sent;
+    uint64_t bytes_received;
+    uint64_t errors;         // CQEs with res < 0
+};
+
+static struct io_stats g_stats;
+
+#define STAT_ADD(field, n) __atomic_fetch_add(&g_stats.field, (uint64_t)(n), __ATOMIC_RELAXED)
+
+struct io_stats *io_uring_stats(void)
+{
+    return &g_stats;
+}
+
+static inline uint64_t now_ns(void)
+{
+    struct timespec ts;
+    clock_gettime(CLOCK_MONOTONIC, &ts);
+    return (uint64_t)ts.tv_sec * 1000000000ULL + (uint64_t)ts.tv_nsec;
+}
+
+// -------- Global ring (one instance per thread) --------
+// Thread-local so that e.g. replay threads can drive their own ring next to the
+// receive loop. Callers must stay on the same OS thread (no virtual threads).
+static __thread struct io_uring g_ring;
+static __thread int g_ring_inited = 0;
+
+// -------- Deadlines --------
+// IORING_OP_LINK_TIMEOUT reads its timespec when the SQE is submitted, not when it is
+// prepared, so a queued timeout needs storage that outlives the queue_* call. The pool
+// has one slot per SQ entry: no more SQEs than that can be pending before they are
+// submitted, so a slot is never rewritten while the kernel may still read it.
+#define INTERNAL_USER_DATA UINT64_MAX // link timeout and cancel CQEs, dropped by io_uring_reap
+
+static __thread struct __kernel_timespec *g_timespecs;
+static __thread unsigned g_timespec_mask;
+static __thread unsigned g_timespec_next;
 
 static inline struct io_uring_sqe *get_sqe_retry()
 {
@@ -33,6 +83,48 @@ static inline struct io_uring_sqe *get_sqe_retry()
     return sqe;
 }
 
+// Submits what is queued and blocks for the next CQE, accounting both in g_stats
+static int submit_and_wait_one(struct io_uring_cqe **cqe)
+{
+    int ret = io_uring_submit(&g_ring);
+    if (ret < 0)
+        return ret;
+    STAT_ADD(submits, 1);
+    STAT_ADD(sqes, ret);
+
+    uint64_t start = now_ns();
+    ret = io_uring_wait_cqe(&g_ring, cqe);
+    STAT_ADD(wait_ns, now_ns() - start);
+    if (ret < 0)
+        return ret;
+    STAT_ADD(completions, 1);
+    if ((*cqe)->res < 0)
+        STAT_ADD(errors, 1);
+    return 0;
+}
+
+// Two SQEs from the same submission, so get_sqe_retry can never split a linked pair
+static int get_sqe_pair(struct io_uring_sqe **op, struct io_uring_sqe **timeout)
+{
+    if (io_uring_sq_space_left(&g_ring) < 2 && io_uring_submit(&g_ring) < 0)
+        return -EAGAIN;
+    *op = io_uring_get_sqe(&g_ring);
+    *timeout = io_uring_get_sqe(&g_ring);
+    return (*op && *timeout) ? 0 : -EAGAIN;
+}
+
+// Links a timeout to op: if op has not completed after timeout_ns it is cancelled and
+// completes with -ECANCELED
+static void prep_link_timeout(struct io_uring_sqe *op, struct io_uring_sqe *sqe, long long timeout_ns)
+{
+    struct __kernel_timespec *ts = &g_timespecs[g_timespec_next++ & g_timespec_mask];
+    ts->tv_sec = timeout_ns / 1000000000LL;
+    ts->tv_nsec = timeout_ns % 1000000000LL;
+    op->flags |= IOSQE_IO_LINK;
+    io_uring_prep_link_timeout(sqe, ts, 0);
+    io_uring_sqe_set_data64(sqe, INTERNAL_USER_DATA);
+}
+
 // -------- Lifecycle --------
 int io_uring_global_init(unsigned queue_depth)
 {
@@ -44,6 +136,18 @@ int io_uring_global_init(unsigned queue_depth)
         fprintf(stderr, "io_uring_queue_init failed: %s\n", strerror(-ret));
         return -1;
     }
+    // The kernel rounds the SQ up to a power of two, so size the pool the same way
+    unsigned slots = 1;
+    while (slots < queue_depth)
+        slots <<= 1;
+    g_timespecs = calloc(slots, sizeof(*g_timespecs));
+    if (!g_timespecs)
+    {
+        io_uring_queue_exit(&g_ring);
+        return -1;
+    }
+    g_timespec_mask = slots - 1;
+    g_timespec_next = 0;
     g_ring_inited = 1;
     return 0;
 }
@@ -53,6 +157,8 @@ void io_uring_global_shutdown(void)
     if (!g_ring_inited)
         return;
     io_uring_queue_exit(&g_ring);
+    free(g_timespecs);
+    g_timespecs = NULL;
     g_ring_inited = 0;
 }
 
@@ -94,8 +200,7 @@ void io_uring_close(int sockfd)
 }
 
 // -------- Connection management (server) --------
-// Create a listening socket
-int io_uring_listen(int port, int backlog)
+static int listen_on(int port, int backlog, int reuse_port)
 {
     if (!g_ring_inited)
     {
@@ -109,6 +214,11 @@ int io_uring_listen(int port, int backlog)
 
     int opt = 1;
     setsockopt(listen_fd, SOL_SOCKET, SO_REUSEADDR, &opt, sizeof(opt));
+    if (reuse_port && setsockopt(listen_fd, SOL_SOCKET, SO_REUSEPORT, &opt, sizeof(opt)) < 0)
+    {
+        close(listen_fd);
+        return -1;
+    }
 
     struct sockaddr_in addr;
     memset(&addr, 0, sizeof(addr));
@@ -131,6 +241,19 @@ int io_uring_listen(int port, int backlog)
     return listen_fd;
 }
 
+// Create a listening socket
+int io_uring_listen(int port, int backlog)
+{
+    return listen_on(port, backlog, 0);
+}
+
+// Like io_uring_listen, but several sockets, e.g. one per I/O thread, can listen on
+// the same port; the kernel spreads incoming connections over them
+int io_uring_listen_reuseport(int port, int backlog)
+{
+    return listen_on(port, backlog, 1);
+}
+
 // Accept a client connection
 int io_uring_accept(int listen_fd)
 {
@@ -156,12 +279,9 @@ int io_uring_accept_async(int listen_fd)
         return -EAGAIN;
 
     io_uring_prep_accept(sqe, listen_fd, NULL, NULL, 0);
-    int ret = io_uring_submit(&g_ring);
-    if (ret < 0)
-        return ret;
 
     struct io_uring_cqe *cqe = NULL;
-    ret = io_uring_wait_cqe(&g_ring, &cqe);
+    int ret = submit_and_wait_one(&cqe);
     if (ret < 0)
         return ret;
 
@@ -181,21 +301,19 @@ int io_uring_send(int sockfd, const void *buffer, size_t length)
         return -EAGAIN;
 
     io_uring_prep_send(sqe, sockfd, buffer, length, MSG_NOSIGNAL);
-    int ret = io_uring_submit(&g_ring);
-    if (ret < 0)
-        return ret;
 
     struct io_uring_cqe *cqe = NULL;
-    ret = io_uring_wait_cqe(&g_ring, &cqe);
+    int ret = submit_and_wait_one(&cqe);
     if (ret < 0)
     {
-        fprintf(stderr, "io_uring_submit failed: %s\n", strerror(-ret));
+        fprintf(stderr, "io_uring_wait_cqe failed: %s\n", strerror(-ret));
         return ret;
     }
 
     int sent = cqe->res;
     io_uring_cqe_seen(&g_ring, cqe);
-    printf("Sent %d bytes\n", sent);
+    if (sent > 0)
+        STAT_ADD(bytes_sent, sent);
     return sent;
 }
 
@@ -213,10 +331,7 @@ int io_uring_send_all(int sockfd, const void *buffer, size_t length)
         p += n;
         remaining -= (size_t)n;
         total += (size_t)n;
-        printf("Sent %d bytes, %zu remaining\n", n, remaining);
-
     }
-    printf("Total bytes sent: %zu\n", total);
     return (int)total;
 }
 
@@ -230,17 +345,63 @@ int io_uring_recv(int sockfd, void *buffer, size_t length)
         return -EAGAIN;
 
     io_uring_prep_recv(sqe, sockfd, buffer, length, 0);
-    int ret = io_uring_submit(&g_ring);
-    if (ret < 0)
-        return ret;
 
     struct io_uring_cqe *cqe = NULL;
-    ret = io_uring_wait_cqe(&g_ring, &cqe);
+    int ret = submit_and_wait_one(&cqe);
     if (ret < 0)
         return ret;
 
     int recvd = cqe->res;
     io_uring_cqe_seen(&g_ring, cqe);
+    if (recvd > 0)
+        STAT_ADD(bytes_received, recvd);
+    return recvd;
+}
+
+// Like io_uring_recv, but gives up after timeout_ns without data so a silent peer
+// cannot hold the caller forever. Returns -ETIMEDOUT in that case.
+int io_uring_recv_timeout(int sockfd, void *buffer, size_t length, long long timeout_ns)
+{
+    if (timeout_ns <= 0)
+        return io_uring_recv(sockfd, buffer, length);
+    if (!g_ring_inited || length == 0)
+        return -EINVAL;
+
+    struct io_uring_sqe *sqe = NULL, *timeout = NULL;
+    if (get_sqe_pair(&sqe, &timeout) < 0)
+        return -EAGAIN;
+    io_uring_prep_recv(sqe, sockfd, buffer, length, 0);
+    io_uring_sqe_set_data64(sqe, 0);
+    prep_link_timeout(sqe, timeout, timeout_ns);
+
+    int ret = io_uring_submit(&g_ring);
+    if (ret < 0)
+        return ret;
+    STAT_ADD(submits, 1);
+    STAT_ADD(sqes, ret);
+
+    // Both the recv and its timeout always post a CQE
+    int recvd = -ECANCELED;
+    uint64_t start = now_ns();
+    for (int i = 0; i < 2; i++)
+    {
+        struct io_uring_cqe *cqe = NULL;
+        ret = io_uring_wait_cqe(&g_ring, &cqe);
+        if (ret < 0)
+            return ret;
+        if (io_uring_cqe_get_data64(cqe) != INTERNAL_USER_DATA)
+            recvd = cqe->res;
+        io_uring_cqe_seen(&g_ring, cqe);
+    }
+    STAT_ADD(wait_ns, now_ns() - start);
+    STAT_ADD(completions, 2);
+
+    if (recvd == -ECANCELED)
+        return -ETIMEDOUT;
+    if (recvd < 0)
+        STAT_ADD(errors, 1);
+    else
+        STAT_ADD(bytes_received, recvd);
     return recvd;
 }
 
@@ -263,3 +424,310 @@ int io_uring_recv_exact(int sockfd, void *buffer, size_t length)
     }
     return (int)total;
 }
+
+// -------- Asynchronous ops --------
+// io_uring_queue_* only place an SQE tagged with user_data; nothing is submitted
+// until io_uring_reap, so one syscall covers every op queued since the last reap.
+// This lets a single thread keep many connections in flight. Buffers are passed as a
+// base and an offset, so a caller can continue a short transfer without a new pointer.
+
+struct completion
+{
+    uint64_t user_data;
+    int32_t res;
+    uint32_t flags;
+};
+
+#define REAP_BATCH 256
+
+int io_uring_queue_accept(int listen_fd, uint64_t user_data)
+{
+    struct io_uring_sqe *sqe = get_sqe_retry();
+    if (!sqe)
+        return -EAGAIN;
+    io_uring_prep_accept(sqe, listen_fd, NULL, NULL, 0);
+    io_uring_sqe_set_data64(sqe, user_data);
+    return 0;
+}
+
+int io_uring_queue_recv(int sockfd, char *buffer, size_t offset, size_t length, uint64_t user_data)
+{
+    struct io_uring_sqe *sqe = get_sqe_retry();
+    if (!sqe)
+        return -EAGAIN;
+    io_uring_prep_recv(sqe, sockfd, buffer + offset, length, 0);
+    io_uring_sqe_set_data64(sqe, user_data);
+    return 0;
+}
+
+int io_uring_queue_send(int sockfd, const char *buffer, size_t offset, size_t length, uint64_t user_data)
+{
+    struct io_uring_sqe *sqe = get_sqe_retry();
+    if (!sqe)
+        return -EAGAIN;
+    io_uring_prep_send(sqe, sockfd, buffer + offset, length, MSG_NOSIGNAL);
+    io_uring_sqe_set_data64(sqe, user_data);
+    return 0;
+}
+
+// Variants with a deadline: an op still pending after timeout_ns completes with
+// -ECANCELED. timeout_ns <= 0 queues the plain op.
+int io_uring_queue_recv_timeout(int sockfd, char *buffer, size_t offset, size_t length, uint64_t user_data,
+                                long long timeout_ns)
+{
+    if (timeout_ns <= 0)
+        return io_uring_queue_recv(sockfd, buffer, offset, length, user_data);
+    struct io_uring_sqe *sqe = NULL, *timeout = NULL;
+    if (get_sqe_pair(&sqe, &timeout) < 0)
+        return -EAGAIN;
+    io_uring_prep_recv(sqe, sockfd, buffer + offset, length, 0);
+    io_uring_sqe_set_data64(sqe, user_data);
+    prep_link_timeout(sqe, timeout, timeout_ns);
+    return 0;
+}
+
+int io_uring_queue_send_timeout(int sockfd, const char *buffer, size_t offset, size_t length, uint64_t user_data,
+                                long long timeout_ns)
+{
+    if (timeout_ns <= 0)
+        return io_uring_queue_send(sockfd, buffer, offset, length, user_data);
+    struct io_uring_sqe *sqe = NULL, *timeout = NULL;
+    if (get_sqe_pair(&sqe, &timeout) < 0)
+        return -EAGAIN;
+    io_uring_prep_send(sqe, sockfd, buffer + offset, length, MSG_NOSIGNAL);
+    io_uring_sqe_set_data64(sqe, user_data);
+    prep_link_timeout(sqe, timeout, timeout_ns);
+    return 0;
+}
+
+// Cancels the pending op tagged user_data; it then completes with -ECANCELED, after
+// which its buffer may be reused. Nothing happens if it already completed.
+int io_uring_queue_cancel(uint64_t user_data)
+{
+    struct io_uring_sqe *sqe = get_sqe_retry();
+    if (!sqe)
+        return -EAGAIN;
+    io_uring_prep_cancel64(sqe, user_data, 0);
+    io_uring_sqe_set_data64(sqe, INTERNAL_USER_DATA);
+    return 0;
+}
+
+// Submits everything queued, waits for at least one completion (timeout_ns < 0: no
+// limit, 0: do not wait) and copies up to max completions to out. CQEs of link
+// timeouts and cancels are consumed without being copied.
+// Returns the number of completions copied, or -errno.
+int io_uring_reap(struct completion *out, int max, long long timeout_ns)
+{
+    if (!g_ring_inited || max <= 0)
+        return -EINVAL;
+
+    uint64_t start = now_ns();
+    int ret;
+    if (timeout_ns < 0)
+    {
+        ret = io_uring_submit_and_wait(&g_ring, 1);
+    }
+    else if (timeout_ns == 0)
+    {
+        ret = io_uring_submit(&g_ring);
+    }
+    else
+    {
+        struct io_uring_cqe *cqe = NULL;
+        struct __kernel_timespec ts = {
+            .tv_sec = timeout_ns / 1000000000LL,
+            .tv_nsec = timeout_ns % 1000000000LL};
+        ret = io_uring_submit_and_wait_timeout(&g_ring, &cqe, 1, &ts, NULL);
+    }
+    if (ret < 0 && ret != -ETIME && ret != -EINTR)
+        return ret;
+    STAT_ADD(submits, 1);
+    if (ret > 0)
+        STAT_ADD(sqes, ret);
+    if (timeout_ns != 0)
+        STAT_ADD(wait_ns, now_ns() - start);
+
+    struct io_uring_cqe *cqes[REAP_BATCH];
+    int total = 0;
+    while (total < max)
+    {
+        unsigned want = (unsigned)(max - total) < REAP_BATCH ? (unsigned)(max - total) : REAP_BATCH;
+        unsigned got = io_uring_peek_batch_cqe(&g_ring, cqes, want);
+        if (got == 0)
+            break;
+        for (unsigned i = 0; i < got; i++)
+        {
+            if (io_uring_cqe_get_data64(cqes[i]) == INTERNAL_USER_DATA)
+                continue; // the op it belonged to reports the outcome
+            out[total].user_data = io_uring_cqe_get_data64(cqes[i]);
+            out[total].res = cqes[i]->res;
+            out[total].flags = cqes[i]->flags;
+            if (cqes[i]->res < 0)
+                STAT_ADD(errors, 1);
+            total++;
+        }
+        io_uring_cq_advance(&g_ring, got);
+        STAT_ADD(completions, got);
+    }
+    return total;
+}
+
+// -------- Zero-copy file replay --------
+#define SPLICE_CHUNK (1024 * 1024) // bytes moved per file -> pipe -> socket round
+
+static long long sendfile_range(int sockfd, int file_fd, long long offset, long long length)
+{
+    off_t off = (off_t)offset;
+    long long total = 0;
+    while (total < length)
+    {
+        ssize_t n = sendfile(sockfd, file_fd, &off, (size_t)(length - total));
+        if (n < 0)
+        {
+            if (errno == EINTR)
+                continue;
+            return -errno;
+        }
+        if (n == 0)
+            break;
+        total += n;
+    }
+    return total;
+}
+
+// Streams [offset, offset + length) of the file at path to sockfd without copying
+// through user space: each round links two IORING_OP_SPLICE ops, file -> pipe and
+// pipe -> socket. Falls back to sendfile(2) when the kernel cannot splice the file.
+// Returns the number of bytes sent, or -errno.
+long long io_uring_splice_file(int sockfd, const char *path, long long offset, long long length)
+{
+    if (!g_ring_inited || length < 0)
+        return -EINVAL;
+
+    int file_fd = open(path, O_RDONLY);
+    if (file_fd < 0)
+        return -errno;
+
+    int pipefd[2];
+    if (pipe(pipefd) < 0)
+    {
+        int err = -errno;
+        close(file_fd);
+        return err;
+    }
+    int pipe_size = fcntl(pipefd[1], F_SETPIPE_SZ, SPLICE_CHUNK);
+    size_t chunk = pipe_size > 0 ? (size_t)pipe_size : 64 * 1024;
+
+    long long total = 0;
+    long long ret = 0;
+    while (total < length)
+    {
+        size_t want = (size_t)(length - total) < chunk ? (size_t)(length - total) : chunk;
+
+        struct io_uring_sqe *in = get_sqe_retry();
+        if (!in)
+        {
+            ret = -EAGAIN;
+            break;
+        }
+        io_uring_prep_splice(in, file_fd, offset + total, pipefd[1], -1, want, SPLICE_F_MOVE);
+        in->flags |= IOSQE_IO_LINK;
+        io_uring_sqe_set_data64(in, 1);
+
+        struct io_uring_sqe *out = get_sqe_retry();
+        if (!out)
+        {
+            ret = -EAGAIN;
+            break;
+        }
+        io_uring_prep_splice(out, pipefd[0], -1, sockfd, -1, want, SPLICE_F_MOVE | SPLICE_F_MORE);
+        io_uring_sqe_set_data64(out, 2);
+
+        int sret = io_uring_submit(&g_ring);
+        if (sret < 0)
+        {
+            ret = sret;
+            break;
+        }
+
+        // A short file -> pipe splice cancels the linked op, so track what is left in the pipe
+        int in_res = 0, out_res = 0;
+        for (int i = 0; i < 2; i++)
+        {
+            struct io_uring_cqe *cqe = NULL;
+            sret = io_uring_wait_cqe(&g_ring, &cqe);
+            if (sret < 0)
+                break;
+            if (io_uring_cqe_get_data64(cqe) == 1)
+                in_res = cqe->res;
+            else
+                out_res = cqe->res;
+            io_uring_cqe_seen(&g_ring, cqe);
+        }
+        if (sret < 0)
+        {
+            ret = sret;
+            break;
+        }
+
+        if (in_res < 0)
+        {
+            if (in_res == -EINVAL && total == 0)
+            {
+                // Splice not supported for this file/socket pair
+                ret = sendfile_range(sockfd, file_fd, offset, length);
+                total = ret < 0 ? 0 : ret;
+            }
+            else
+            {
+                ret = in_res;
+            }
+            break;
+        }
+        if (in_res == 0)
+            break; // file shorter than requested
+
+        size_t in_pipe = (size_t)in_res - (out_res > 0 ? (size_t)out_res : 0);
+        if (out_res < 0 && out_res != -ECANCELED)
+        {
+            ret = out_res;
+            break;
+        }
+        while (in_pipe > 0)
+        {
+            struct io_uring_sqe *drain = get_sqe_retry();
+            if (!drain)
+            {
+                ret = -EAGAIN;
+                break;
+            }
+            io_uring_prep_splice(drain, pipefd[0], -1, sockfd, -1, in_pipe, SPLICE_F_MOVE | SPLICE_F_MORE);
+            io_uring_submit(&g_ring);
+            struct io_uring_cqe *cqe = NULL;
+            sret = io_uring_wait_cqe(&g_ring, &cqe);
+            if (sret < 0)
+            {
+                ret = sret;
+                break;
+            }
+            int n = cqe->res;
+            io_uring_cqe_seen(&g_ring, cqe);
+            if (n <= 0)
+            {
+                ret = (n < 0) ? n : -EPIPE;
+                break;
+            }
+            in_pipe -= (size_t)n;
+        }
+        if (ret < 0)
+            break;
+        total += in_res;
+    }
+
+    close(pipefd[0]);
+    close(pipefd[1]);
+    close(file_fd);
+    if (total > 0)
+        STAT_ADD(bytes_sent, total);
+    return ret < 0 ? ret : total;
+}